@@ -0,0 +1,205 @@
+/*************************************************************************
+ *  Compilation:  javac Batch.java
+ *  Execution:    java Batch graph-file query-file [threads] [-paths] [-pq kind]
+ *                           [-metrics json|csv|off] [-order hilbert|bfs]
+ *  Dependencies: EuclideanGraph.java GraphFile.java Router.java QueryContext.java
+ *                Dijkstra.java MinPQ.java Metrics.java IntScanner.java Renumbering.java
+ *
+ *  Bulk routing: reads every s-d pair from the query file up front,
+ *  answers them on a fixed pool of worker threads and prints the
+ *  results in input order, one per line, exactly as Distances would
+ *  (or as Paths would print them, with -paths).
+ *
+ *  Each worker borrows one QueryContext from the Router for its whole
+ *  life and claims the queries in small chunks from a shared counter,
+ *  so long and short queries balance out across cores. Throughput is
+ *  reported on stderr. -pq picks the priority queue (4-ary, radix,
+ *  pairing, lazy, ...; see MinPQ). -metrics dumps the Router's metrics
+ *  (latency percentiles, settled, relaxed, ...) to stderr as JSON or
+ *  CSV, or turns recording off. -order renumbers the graph for cache
+ *  locality after loading (see Renumbering); queries and printed paths
+ *  keep the ids of the graph file.
+ *
+ *  % java Batch usa.txt allQueries.txt 8 > distances.txt
+ *
+ *************************************************************************/
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Batch {
+    private static final int CHUNK = 64;   // queries claimed at a time
+
+    private final Router router;
+    private final int threads;
+
+    public Batch(Router router, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+        this.router = router;
+        this.threads = threads;
+    }
+
+    // read all s-d pairs, flattened: s0 d0 s1 d1 ...
+    public static int[] readQueries(IntScanner in) {
+        int[] q = new int[1024];
+        int n = 0;
+        while (in.hasNext()) {
+            if (n == q.length) q = Arrays.copyOf(q, 2 * n);
+            q[n++] = in.nextInt();
+        }
+        if (n % 2 != 0) throw new RuntimeException("Odd number of vertices in query file");
+        return Arrays.copyOf(q, n);
+    }
+
+    // distance of each pair, in input order
+    public double[] distances(final int[] queries) {
+        final double[] results = new double[queries.length / 2];
+        run(results.length, new Task() {
+            public void answer(QueryContext ctx, int i) {
+                int s = queries[2 * i];
+                int d = queries[2 * i + 1];
+                results[i] = router.searcher(ctx, d).distance(s, d);
+            }
+        });
+        return results;
+    }
+
+    // path of each pair, s first, in input order; empty if unreachable
+    public int[][] paths(final int[] queries) {
+        final int[][] results = new int[queries.length / 2][];
+        run(results.length, new Task() {
+            public void answer(QueryContext ctx, int i) {
+                int s = queries[2 * i];
+                int d = queries[2 * i + 1];
+                Dijkstra dijkstra = router.searcher(ctx, d);
+                dijkstra.compute(s, d);
+                results[i] = dijkstra.path(s, d);
+            }
+        });
+        return results;
+    }
+
+
+    // one query, answered with the worker's own search state
+    interface Task {
+        void answer(QueryContext ctx, int i);
+    }
+
+    // spread queries 0..count-1 over the workers, CHUNK at a time
+    void run(final int count, final Task task) {
+        final AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] workers = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                workers[t] = pool.submit(new Runnable() {
+                    public void run() {
+                        QueryContext ctx = router.acquire();
+                        try {
+                            int first;
+                            while ((first = next.getAndAdd(CHUNK)) < count) {
+                                int last = Math.min(first + CHUNK, count);
+                                for (int i = first; i < last; i++)
+                                    task.answer(ctx, i);
+                            }
+                        }
+                        finally { router.release(ctx); }
+                    }
+                });
+            }
+            for (Future<?> worker : workers) worker.get();
+        }
+        catch (InterruptedException e) { throw new RuntimeException(e); }
+        catch (ExecutionException e)   { throw new RuntimeException(e.getCause()); }
+        finally { pool.shutdown(); }
+    }
+
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java Batch <graph-file> <query-file> [threads] [-paths] [-pq kind]"
+                               + " [-metrics json|csv|off] [-order hilbert|bfs]");
+            System.exit(1);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean showPaths = false;
+        MinPQ.Factory queues = IndexPQ.factory(4);
+        String metrics = null;
+        String order = null;
+        for (int i = 2; i < args.length; i++) {
+            if      (args[i].equals("-paths"))   showPaths = true;
+            else if (args[i].equals("-pq"))      queues = MinPQ.factory(args[++i]);
+            else if (args[i].equals("-metrics")) metrics = args[++i];
+            else if (args[i].equals("-order"))   order = args[++i];
+            else threads = Integer.parseInt(args[i]);
+        }
+
+        EuclideanGraph G = GraphFile.read(args[0]);   // text or binary
+        System.err.println("Done reading the graph " + args[0]);
+        int[] queries = readQueries(IntScanner.open(args[1]));
+        int count = queries.length / 2;
+        System.err.println("Read " + count + " queries from " + args[1]);
+
+        // search a renumbered copy; queries in and paths out keep the file's ids
+        Renumbering ids = null;
+        if (order != null) {
+            ids = Renumbering.of(order, G);
+            G = ids.graph();
+            ids.internal(queries);
+        }
+
+        Router router = new Router(G, null, true, false, queues);
+        if ("off".equals(metrics)) router.instrument(false);
+        Batch batch = new Batch(router, threads);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+
+        long start = System.nanoTime();
+        if (showPaths) {
+            int[][] paths = batch.paths(queries);
+            long end = System.nanoTime();
+            if (ids != null) ids.external(queries);
+            for (int i = 0; i < count; i++) {
+                int[] p = paths[i];
+                if (ids != null) ids.external(p);
+                if (p.length == 0) {
+                    out.println("No path from " + queries[2 * i] + " to " + queries[2 * i + 1]);
+                    continue;
+                }
+                // same format as Dijkstra.showPath(): destination first
+                for (int j = p.length - 1; j > 0; j--) {
+                    out.print(p[j]);
+                    out.print('-');
+                }
+                out.println(p[0]);
+            }
+            report(count, threads, queues, end - start);
+        }
+        else {
+            double[] distances = batch.distances(queries);
+            long end = System.nanoTime();
+            for (int i = 0; i < count; i++)
+                out.println(distances[i]);
+            report(count, threads, queues, end - start);
+        }
+        out.flush();
+
+        if ("json".equals(metrics)) System.err.println(router.metrics().toJson());
+        else if ("csv".equals(metrics)) {
+            System.err.println(Metrics.csvHeader());
+            System.err.println(router.metrics().toCsv());
+        }
+    }
+
+    private static void report(int count, int threads, MinPQ.Factory queues, long nanos) {
+        double seconds = nanos / 1e9;
+        System.err.printf("%d queries on %d threads (%s queue) in %.3f s: %.1f queries/s%n",
+                          count, threads, queues.name(), seconds, count / seconds);
+    }
+}
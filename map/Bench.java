@@ -0,0 +1,224 @@
+/*************************************************************************
+ *  Compilation:  javac Bench.java
+ *  Execution:    java Bench [-w warmups] [-i iterations] [-t millis] [-pq kind]
+ *                           [-order hilbert|bfs] [filter]
+ *  Dependencies: EuclideanGraph.java GraphFile.java Dijkstra.java
+ *                MinPQ.java IndexPQ.java RadixPQ.java PairingPQ.java
+ *                LazyPQ.java Renumbering.java IntScanner.java In.java
+ *                LinkedEuclideanGraph.java Batch.java
+ *
+ *  Benchmark suite for the hot paths: loading usa.txt, a walk over every
+ *  neighbor list in the CSR layout and in the old linked-list one
+ *  (LinkedEuclideanGraph), Dijkstra.distance in plain and A* mode on the
+ *  usa-100short, usa-1000long and usa-50000short query sets, and
+ *  insert/change/delMin on every kind of MinPQ. -pq picks the queue the Dijkstra benchmarks use, and
+ *  -order renumbers the graph for them (queries are translated).
+ *
+ *  Each benchmark runs the same way as a JMH throughput benchmark in
+ *  one fork: a number of timed warm-up iterations to let the JIT settle,
+ *  then measured iterations of fixed length, each calling the operation
+ *  as many times as fits. Results are fed to a sink so the JIT cannot
+ *  drop the work. The report gives the mean time per operation and the
+ *  standard deviation across iterations. Nothing is drawn, printed or
+ *  slept inside a timed region.
+ *
+ *  Run it from the directory with the data files. A filter runs only
+ *  the benchmarks whose name contains it. The pom.xml at the top of
+ *  the repository compiles map/ and runs this suite there with
+ *  mvn compile exec:exec; JMH itself is not used, since its generated
+ *  harness cannot reach classes in the default package.
+ *
+ *  % java Bench
+ *  % java Bench -w 3 -i 10 dijkstra.astar
+ *
+ *************************************************************************/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class Bench {
+    private static final String GRAPH = "usa.txt";
+    private static final String[] QUERY_SETS = {
+        "usa-100short.txt", "usa-1000long.txt", "usa-50000short.txt"
+    };
+
+    private static int warmups = 5;        // warm-up iterations
+    private static int iterations = 5;     // measured iterations
+    private static long iterationNanos = 1000L * 1000 * 1000;
+
+    // results go here so the JIT cannot drop the work
+    private static volatile double sink;
+    private static int calls;              // op calls so far in this benchmark
+
+    // one call of the benchmarked operation; i counts calls from 0
+    private interface Op {
+        double run(int i);
+    }
+
+    private static class Benchmark {
+        final String name;
+        final Op op;
+        Benchmark(String name, Op op) { this.name = name; this.op = op; }
+    }
+
+
+    public static void main(String[] args) {
+        String filter = "";
+        MinPQ.Factory queues = IndexPQ.factory(4);
+        String renumber = null;
+        for (int i = 0; i < args.length; i++) {
+            if      (args[i].equals("-w")) warmups = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-i")) iterations = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-t")) iterationNanos = Long.parseLong(args[++i]) * 1000 * 1000;
+            else if (args[i].equals("-pq")) queues = MinPQ.factory(args[++i]);
+            else if (args[i].equals("-order")) renumber = args[++i];
+            else filter = args[i];
+        }
+
+        final Renumbering ids = (renumber == null) ? null : Renumbering.of(renumber, GraphFile.read(GRAPH));
+        final EuclideanGraph G = (ids == null) ? GraphFile.read(GRAPH) : ids.graph();
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+        // graph construction
+        benchmarks.add(new Benchmark("load.in", new Op() {
+            public double run(int i) { return new EuclideanGraph(new In(GRAPH)).E(); }
+        }));
+        benchmarks.add(new Benchmark("load.scanner", new Op() {
+            public double run(int i) { return new EuclideanGraph(IntScanner.open(GRAPH)).E(); }
+        }));
+        benchmarks.add(new Benchmark("load.linked", new Op() {
+            public double run(int i) { return new LinkedEuclideanGraph(new In(GRAPH)).E(); }
+        }));
+
+        // every neighbor of every vertex in each layout, read from the same
+        // file in the same order
+        final EuclideanGraph csr = GraphFile.read(GRAPH);
+        final LinkedEuclideanGraph linked = new LinkedEuclideanGraph(new In(GRAPH));
+        benchmarks.add(new Benchmark("walk.csr", new Op() {
+            public double run(int i) {
+                double sum = 0.0;
+                for (int v = 0; v < csr.V(); v++)
+                    for (int e = csr.begin(v), end = csr.end(v); e < end; e++)
+                        sum += csr.target(e);
+                return sum;
+            }
+        }));
+        benchmarks.add(new Benchmark("walk.linked", new Op() {
+            public double run(int i) {
+                double sum = 0.0;
+                for (int v = 0; v < linked.V(); v++)
+                    for (IntIterator it = linked.neighbors(v); it.hasNext(); )
+                        sum += it.next();
+                return sum;
+            }
+        }));
+
+        // single queries, cycling through each query set
+        for (String file : QUERY_SETS) {
+            final int[] q = Batch.readQueries(IntScanner.open(file));
+            if (ids != null) ids.internal(q);
+            final int n = q.length / 2;
+            final Dijkstra plain = new Dijkstra(G, new QueryContext(G.V(), queues));
+            final Dijkstra astar = new Dijkstra(G, new QueryContext(G.V(), queues));
+            String set = file.substring(0, file.length() - ".txt".length());
+            benchmarks.add(new Benchmark("dijkstra.plain " + set, new Op() {
+                public double run(int i) {
+                    int j = i % n;
+                    return plain.distance(q[2 * j], q[2 * j + 1]);
+                }
+            }));
+            benchmarks.add(new Benchmark("dijkstra.astar " + set, new Op() {
+                public double run(int i) {
+                    int j = i % n;
+                    astar.enableAStar(q[2 * j + 1]);
+                    return astar.distance(q[2 * j], q[2 * j + 1]);
+                }
+            }));
+        }
+
+        // priority queue operations on random keys, one op = one batch of N
+        final int N = G.V();
+        final double[] keys = new double[N];
+        final int[] order = new int[N];
+        Random random = new Random(20240601L);
+        for (int k = 0; k < N; k++) {
+            keys[k] = random.nextDouble();
+            order[k] = k;
+        }
+        for (int k = N - 1; k > 0; k--) {
+            int r = random.nextInt(k + 1);
+            int t = order[k]; order[k] = order[r]; order[r] = t;
+        }
+        String[] kinds = { "2-ary", "4-ary", "8-ary", "radix", "pairing", "lazy" };
+        for (String kind : kinds) {
+            final MinPQ pq = MinPQ.factory(kind).create(N);
+            benchmarks.add(new Benchmark("pq.insert " + kind, new Op() {
+                public double run(int i) {
+                    pq.clear();
+                    for (int k = 0; k < N; k++) pq.insert(order[k], keys[k]);
+                    return pq.minPriority();
+                }
+            }));
+            benchmarks.add(new Benchmark("pq.insert+change " + kind, new Op() {
+                public double run(int i) {
+                    pq.clear();
+                    for (int k = 0; k < N; k++) pq.insert(order[k], keys[k]);
+                    for (int k = 0; k < N; k++) pq.change(order[k], 0.5 * keys[k]);
+                    return pq.minPriority();
+                }
+            }));
+            benchmarks.add(new Benchmark("pq.insert+delMin " + kind, new Op() {
+                public double run(int i) {
+                    pq.clear();
+                    for (int k = 0; k < N; k++) pq.insert(order[k], keys[k]);
+                    int last = 0;
+                    while (!pq.isEmpty()) last = pq.delMin();
+                    return last;
+                }
+            }));
+        }
+
+        System.out.printf("%-32s %10s %14s %12s%n", "benchmark", "ops", "us/op", "stdev");
+        for (Benchmark b : benchmarks)
+            if (b.name.contains(filter)) measure(b);
+    }
+
+    // warm up, then report mean and spread of the measured iterations
+    private static void measure(Benchmark b) {
+        calls = 0;
+        for (int w = 0; w < warmups; w++)
+            iterate(b.op);
+
+        double[] perOp = new double[iterations];
+        long total = 0;
+        for (int it = 0; it < iterations; it++) {
+            long start = System.nanoTime();
+            long ops = iterate(b.op);
+            long elapsed = System.nanoTime() - start;
+            perOp[it] = elapsed / 1e3 / ops;
+            total += ops;
+        }
+
+        double mean = 0.0;
+        for (double x : perOp) mean += x;
+        mean /= iterations;
+        double var = 0.0;
+        for (double x : perOp) var += (x - mean) * (x - mean);
+        double stdev = (iterations > 1) ? Math.sqrt(var / (iterations - 1)) : 0.0;
+        System.out.printf("%-32s %10d %14.3f %12.3f%n", b.name, total, mean, stdev);
+    }
+
+    // call op until one iteration's time is used up; returns the number of calls
+    private static long iterate(Op op) {
+        long end = System.nanoTime() + iterationNanos;
+        double acc = 0.0;
+        long n = 0;
+        do {
+            acc += op.run(calls++);
+            n++;
+        } while (System.nanoTime() < end);
+        sink = acc;
+        return n;
+    }
+}
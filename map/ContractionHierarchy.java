@@ -0,0 +1,514 @@
+/*************************************************************************
+ *  Compilation:  javac ContractionHierarchy.java
+ *  Execution:    java ContractionHierarchy file < input.txt
+ *  Dependencies: EuclideanGraph.java IndexPQ.java In.java StdIn.java
+ *                DynamicGraph.java
+ *
+ *  Contraction Hierarchies on top of an EuclideanGraph.
+ *
+ *  Preprocessing contracts the vertices one at a time, cheapest first
+ *  by edge difference (shortcuts added - edges removed), with the
+ *  number of contracted neighbors and the depth so far as tie-breakers.
+ *  Contracting v adds a shortcut u-w with middle vertex v whenever a
+ *  bounded witness search cannot find a path from u to w that avoids v
+ *  and is no longer than u-v-w. The position of v in this order is its
+ *  rank.
+ *
+ *  Every edge, original or shortcut, is kept only at its lower-ranked
+ *  endpoint, giving an "upward" graph in CSR form. A query runs
+ *  Dijkstra upward from both s and d (with stall-on-demand) and meets
+ *  at the highest vertex of the shortest path, so it settles a few
+ *  hundred vertices on usa.txt instead of thousands. Shortcuts are
+ *  expanded back into original edges for showPath() and drawPath().
+ *
+ *  The weights are built in, so a hierarchy answers for one graph only.
+ *  One built from a DynamicGraph remembers its version and throws
+ *  IllegalStateException on a query once a commit has superseded it.
+ *
+ *  % java ContractionHierarchy usa.txt < usa-1000long.txt
+ *
+ *************************************************************************/
+
+import java.awt.Color;
+import java.util.Arrays;
+
+public class ContractionHierarchy {
+    private static final double INFINITY = Double.MAX_VALUE;
+
+    // give up a witness search after settling this many vertices; the
+    // priority estimate can afford to be rougher than the real thing
+    private static final int WITNESS_LIMIT  = 200;
+    private static final int SIMULATE_LIMIT = 5;
+
+    private final EuclideanGraph G;
+    private final int V;
+    private final DynamicGraph dynamic;   // source of G, or null
+    private final long version;           // dynamic's version when G was current
+    private final int[] rank;        // rank[v] = position of v in the contraction order
+    private int shortcuts;           // number of shortcut edges added
+
+    // upward graph: edges of v go to higher-ranked vertices
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final double[] upWeights;
+    private final int[] upMids;      // middle vertex of a shortcut, -1 for an original edge
+
+    // per-query state, reset lazily like in Dijkstra
+    private final double[] distF, distB;
+    private final int[] predF, predB;
+    private final int[] seenF, seenB;
+    private final IndexPQ pqF, pqB;
+    private int queryId = 1;
+    private double best;
+    private int lastVisitedCount;
+
+    // unpacked path of the last query, s first
+    private int[] path = new int[16];
+    private int pathLength;
+    private int pathSource = -1, pathTarget = -1;
+
+    public ContractionHierarchy(EuclideanGraph G) {
+        this(G, null, 0);
+    }
+
+    // on the current snapshot of dynamic, refusing queries once it changes
+    public ContractionHierarchy(DynamicGraph dynamic) {
+        // version first: a commit in between only makes this look stale
+        this(dynamic, dynamic.version());
+    }
+
+    private ContractionHierarchy(DynamicGraph dynamic, long version) {
+        this(dynamic.snapshot(), dynamic, version);
+    }
+
+    private ContractionHierarchy(EuclideanGraph G, DynamicGraph dynamic, long version) {
+        this.G = G;
+        this.V = G.V();
+        this.dynamic = dynamic;
+        this.version = version;
+        rank = new int[V];
+
+        Contractor c = new Contractor(G);
+        int[][] upAdj = new int[V][];
+        double[][] upWt = new double[V][];
+        int[][] upVia = new int[V][];
+        c.run(rank, upAdj, upWt, upVia);
+        shortcuts = c.shortcuts;
+
+        // pack the upward edges into CSR arrays
+        upOffsets = new int[V + 1];
+        for (int v = 0; v < V; v++)
+            upOffsets[v + 1] = upOffsets[v] + upAdj[v].length;
+        int M = upOffsets[V];
+        upTargets = new int[M];
+        upWeights = new double[M];
+        upMids    = new int[M];
+        for (int v = 0; v < V; v++) {
+            int n = upAdj[v].length;
+            System.arraycopy(upAdj[v], 0, upTargets, upOffsets[v], n);
+            System.arraycopy(upWt[v],  0, upWeights, upOffsets[v], n);
+            System.arraycopy(upVia[v], 0, upMids,    upOffsets[v], n);
+        }
+
+        distF = new double[V];
+        distB = new double[V];
+        predF = new int[V];
+        predB = new int[V];
+        seenF = new int[V];
+        seenB = new int[V];
+        pqF = new IndexPQ(V);
+        pqB = new IndexPQ(V);
+    }
+
+    // accessor methods
+    public int shortcutCount() { return shortcuts; }
+    public int rank(int v)     { return rank[v];    }
+
+    // return number of vertices settled in the last query
+    public int visitedCount() { return lastVisitedCount; }
+
+    // true once a DynamicGraph commit has replaced the graph this was built on
+    public boolean isStale() { return dynamic != null && dynamic.version() != version; }
+
+    private void checkCurrent() {
+        if (isStale()) throw new IllegalStateException("Graph changed since the hierarchy was built");
+    }
+
+    // run the query once and unpack the path for showPath()/drawPath()
+    public void compute(int s, int d) {
+        checkCurrent();
+        query(s, d);
+        unpack(s, d);
+    }
+
+    // return the shortest path distance from s to d
+    public double distance(int s, int d) {
+        checkCurrent();
+        query(s, d);
+        return best;
+    }
+
+    // the vertices of the shortest path from s to d, s first;
+    // empty if d is unreachable
+    public int[] path(int s, int d) {
+        compute(s, d);
+        return Arrays.copyOf(path, pathLength);
+    }
+
+    // Print the shortest path from s to d, in the same format as Dijkstra.
+    public void showPath(int d, int s) {
+        checkCurrent();
+        if (pathSource != s || pathTarget != d) compute(s, d);
+        if (pathLength == 0) {
+            System.out.println("No path from " + s + " to " + d);
+            return;
+        }
+        for (int i = pathLength - 1; i > 0; i--)
+            System.out.print(path[i] + "-");
+        System.out.println(s);
+    }
+
+    // draw the shortest path from s to d using Turtle graphics.
+    public void drawPath(int s, int d) {
+        checkCurrent();
+        if (pathSource != s || pathTarget != d) compute(s, d);
+        if (pathLength == 0) return;
+        Turtle.setColor(Color.red);
+        for (int i = 1; i < pathLength; i++)
+            G.point(path[i]).drawTo(G.point(path[i - 1]));
+        Turtle.render();
+    }
+
+
+    // bidirectional upward Dijkstra, meeting vertex ends up in best/meet
+    private int meet;
+
+    private void query(int s, int d) {
+        queryId++;
+        best = INFINITY;
+        meet = -1;
+        pathSource = pathTarget = -1;
+
+        distF[s] = 0.0; predF[s] = -1; seenF[s] = queryId; pqF.insert(s, 0.0);
+        distB[d] = 0.0; predB[d] = -1; seenB[d] = queryId; pqB.insert(d, 0.0);
+
+        int visitedCount = 0;
+        while (!pqF.isEmpty() || !pqB.isEmpty()) {
+            // advance the direction with the smaller key
+            boolean forward = !pqF.isEmpty()
+                && (pqB.isEmpty() || pqF.minPriority() <= pqB.minPriority());
+            IndexPQ pq = forward ? pqF : pqB;
+
+            // neither side can improve on best any more
+            if (pq.minPriority() >= best) break;
+
+            double[] dist  = forward ? distF : distB;
+            int[] pred     = forward ? predF : predB;
+            int[] seen     = forward ? seenF : seenB;
+            double[] other = forward ? distB : distF;
+            int[] oseen    = forward ? seenB : seenF;
+
+            int v = pq.delMin();
+            visitedCount++;
+
+            if (oseen[v] == queryId && dist[v] + other[v] < best) {
+                best = dist[v] + other[v];
+                meet = v;
+            }
+
+            if (stalled(v, dist, seen)) continue;
+
+            for (int e = upOffsets[v]; e < upOffsets[v + 1]; e++) {
+                int w = upTargets[e];
+                double nd = dist[v] + upWeights[e];
+                if (seen[w] != queryId) {
+                    dist[w] = nd;
+                    pred[w] = v;
+                    seen[w] = queryId;
+                    pq.insert(w, nd);
+                }
+                else if (nd < dist[w]) {
+                    dist[w] = nd;
+                    pred[w] = v;
+                    pq.change(w, nd);
+                }
+            }
+        }
+
+        pqF.clear();
+        pqB.clear();
+        lastVisitedCount = visitedCount;
+    }
+
+    // stall-on-demand: v is not on a shortest up-path if some higher
+    // vertex already reached in this search leads back down to v more
+    // cheaply; the graph is undirected, so those are v's own up edges
+    private boolean stalled(int v, double[] dist, int[] seen) {
+        for (int e = upOffsets[v]; e < upOffsets[v + 1]; e++) {
+            int w = upTargets[e];
+            if (seen[w] == queryId && dist[w] + upWeights[e] < dist[v]) return true;
+        }
+        return false;
+    }
+
+    // expand the up-down path found by the last query into original edges
+    private void unpack(int s, int d) {
+        pathSource = s;
+        pathTarget = d;
+        pathLength = 0;
+        if (meet == -1) return;
+
+        // upward half from s to the meeting vertex, reversed into s..meet
+        int n = 0;
+        for (int v = meet; v != -1; v = predF[v]) n++;
+        int[] up = new int[n];
+        for (int v = meet, i = n - 1; v != -1; v = predF[v], i--) up[i] = v;
+
+        append(s);
+        for (int i = 1; i < n; i++)
+            unpackEdge(up[i - 1], up[i]);
+        for (int v = meet; predB[v] != -1; v = predB[v])
+            unpackEdge(v, predB[v]);
+    }
+
+    // append the original vertices of edge x-y after x (already on the path)
+    private void unpackEdge(int x, int y) {
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = x;
+        stack[top++] = y;
+        while (top > 0) {
+            int b = stack[--top];
+            int a = stack[--top];
+            int mid = upMids[edge(a, b)];
+            if (mid == -1) {
+                append(b);
+                continue;
+            }
+            if (top + 4 > stack.length) stack = Arrays.copyOf(stack, 2 * stack.length);
+            // push the second half first so the first half comes out first
+            stack[top++] = mid;
+            stack[top++] = b;
+            stack[top++] = a;
+            stack[top++] = mid;
+        }
+    }
+
+    private void append(int v) {
+        if (pathLength == path.length) path = Arrays.copyOf(path, 2 * path.length);
+        path[pathLength++] = v;
+    }
+
+    // edge slot between a and b, stored at the lower-ranked of the two
+    private int edge(int a, int b) {
+        int lo = (rank[a] < rank[b]) ? a : b;
+        int hi = (lo == a) ? b : a;
+        for (int e = upOffsets[lo]; e < upOffsets[lo + 1]; e++)
+            if (upTargets[e] == hi) return e;
+        throw new RuntimeException("Missing edge " + a + "-" + b);
+    }
+
+
+   /*******************************************************************
+    *  Preprocessing state, dropped once the upward graph is built.
+    *******************************************************************/
+    private static class Contractor {
+        private final int V;
+        private final int[][] adj;        // remaining graph, symmetric
+        private final double[][] wt;
+        private final int[][] via;        // middle vertex, -1 for an original edge
+        private final int[] deg;
+        private final int[] deleted;      // number of contracted neighbors
+        private final int[] level;        // longest chain of contracted vertices below v
+        private int shortcuts;
+
+        // witness search state
+        private final IndexPQ pq;
+        private final double[] wdist;
+        private final int[] wseen;
+        private final int[] wtarget;      // wtarget[w] == wstamp if w is sought
+        private int wstamp = 0;
+
+        Contractor(EuclideanGraph G) {
+            V = G.V();
+            adj = new int[V][];
+            wt  = new double[V][];
+            via = new int[V][];
+            deg = new int[V];
+            deleted = new int[V];
+            level = new int[V];
+            for (int v = 0; v < V; v++) {
+                int n = Math.max(G.degree(v), 1);
+                adj[v] = new int[n];
+                wt[v]  = new double[n];
+                via[v] = new int[n];
+            }
+            for (int v = 0; v < V; v++)
+                for (int e = G.begin(v); e < G.end(v); e++)
+                    if (G.target(e) != v && G.weight(e) != EuclideanGraph.CLOSED)
+                        addEdge(v, G.target(e), G.weight(e), -1);
+
+            pq = new IndexPQ(V);
+            wdist = new double[V];
+            wseen = new int[V];
+            wtarget = new int[V];
+        }
+
+        // contract every vertex, recording the upward edges of each
+        void run(int[] rank, int[][] upAdj, double[][] upWt, int[][] upVia) {
+            IndexPQ order = new IndexPQ(V);
+            for (int v = 0; v < V; v++)
+                order.insert(v, priority(v));
+
+            int next = 0;
+            while (!order.isEmpty()) {
+                int v = order.delMin();
+
+                // lazy update: if v got more expensive, put it back
+                double p = priority(v);
+                if (!order.isEmpty() && p > order.minPriority()) {
+                    order.insert(v, p);
+                    continue;
+                }
+
+                rank[v] = next++;
+                upAdj[v] = Arrays.copyOf(adj[v], deg[v]);
+                upWt[v]  = Arrays.copyOf(wt[v],  deg[v]);
+                upVia[v] = Arrays.copyOf(via[v], deg[v]);
+
+                contract(v, false);
+                for (int i = 0; i < deg[v]; i++) {
+                    int u = adj[v][i];
+                    removeEdge(u, v);
+                    deleted[u]++;
+                    level[u] = Math.max(level[u], level[v] + 1);
+                }
+                for (int i = 0; i < deg[v]; i++)
+                    order.change(adj[v][i], priority(adj[v][i]));
+                deg[v] = 0;
+            }
+        }
+
+        // edge difference, weighted double, plus contracted neighbors and
+        // depth in the hierarchy so far, which spread contraction evenly
+        private double priority(int v) {
+            return 2 * (contract(v, true) - deg[v]) + deleted[v] + level[v];
+        }
+
+        // count (and unless simulating, add) the shortcuts needed to remove v
+        private int contract(int v, boolean simulate) {
+            int added = 0;
+            for (int i = 0; i < deg[v] - 1; i++) {
+                int u = adj[v][i];
+                witness(u, v, i + 1, simulate ? SIMULATE_LIMIT : WITNESS_LIMIT);
+                for (int j = i + 1; j < deg[v]; j++) {
+                    int w = adj[v][j];
+                    double through = wt[v][i] + wt[v][j];
+                    if (wseen[w] == wstamp && wdist[w] <= through) continue;
+                    added++;
+                    if (!simulate) {
+                        if (addEdge(u, w, through, v)) shortcuts++;
+                        addEdge(w, u, through, v);
+                    }
+                }
+            }
+            return added;
+        }
+
+        // bounded Dijkstra from u in the remaining graph, avoiding v, until
+        // the neighbors adj[v][first..] are settled or too far to matter
+        private void witness(int u, int v, int first, int limit) {
+            wstamp++;
+            double maxDist = 0.0;
+            int remaining = 0;
+            for (int j = first; j < deg[v]; j++) {
+                int w = adj[v][j];
+                if (wtarget[w] != wstamp) remaining++;
+                wtarget[w] = wstamp;
+                maxDist = Math.max(maxDist, wt[v][first - 1] + wt[v][j]);
+            }
+
+            wdist[u] = 0.0;
+            wseen[u] = wstamp;
+            pq.insert(u, 0.0);
+            int settled = 0;
+            while (!pq.isEmpty()) {
+                int x = pq.delMin();
+                if (wdist[x] > maxDist || ++settled > limit) break;
+                if (wtarget[x] == wstamp && --remaining == 0) break;
+                for (int i = 0; i < deg[x]; i++) {
+                    int y = adj[x][i];
+                    if (y == v) continue;
+                    double nd = wdist[x] + wt[x][i];
+                    if (wseen[y] != wstamp) {
+                        wdist[y] = nd;
+                        wseen[y] = wstamp;
+                        pq.insert(y, nd);
+                    }
+                    else if (nd < wdist[y]) {
+                        wdist[y] = nd;
+                        pq.change(y, nd);
+                    }
+                }
+            }
+            pq.clear();
+        }
+
+        // add or shorten edge u->w, return true if it is new
+        private boolean addEdge(int u, int w, double weight, int mid) {
+            for (int i = 0; i < deg[u]; i++) {
+                if (adj[u][i] == w) {
+                    if (weight < wt[u][i]) {
+                        wt[u][i]  = weight;
+                        via[u][i] = mid;
+                    }
+                    return false;
+                }
+            }
+            if (deg[u] == adj[u].length) {
+                adj[u] = Arrays.copyOf(adj[u], 2 * deg[u]);
+                wt[u]  = Arrays.copyOf(wt[u],  2 * deg[u]);
+                via[u] = Arrays.copyOf(via[u], 2 * deg[u]);
+            }
+            adj[u][deg[u]] = w;
+            wt[u][deg[u]]  = weight;
+            via[u][deg[u]] = mid;
+            deg[u]++;
+            return true;
+        }
+
+        // remove edge u->v by moving the last edge of u into its slot
+        private void removeEdge(int u, int v) {
+            for (int i = 0; i < deg[u]; i++) {
+                if (adj[u][i] == v) {
+                    int last = --deg[u];
+                    adj[u][i] = adj[u][last];
+                    wt[u][i]  = wt[u][last];
+                    via[u][i] = via[u][last];
+                    return;
+                }
+            }
+        }
+    }
+
+
+    // test client: same input and output as Distances
+    public static void main(String[] args) {
+        In graphin = new In(args[0]);
+        EuclideanGraph G = new EuclideanGraph(graphin);
+        System.err.println("Done reading the graph " + args[0]);
+
+        long start = System.currentTimeMillis();
+        ContractionHierarchy ch = new ContractionHierarchy(G);
+        long end = System.currentTimeMillis();
+        System.err.println("Contracted in " + (end - start) + " ms, "
+                           + ch.shortcutCount() + " shortcuts");
+        System.err.println("Enter query pairs from stdin");
+
+        while (!StdIn.isEmpty()) {
+            int s = StdIn.readInt();
+            int d = StdIn.readInt();
+            System.out.println(ch.distance(s, d));
+        }
+    }
+}
@@ -1,6 +1,11 @@
 /*************************************************************************
  *  Dijkstra's algorithm.
  *
+ *  The search arrays live in a QueryContext. A Dijkstra built from a
+ *  graph alone gets a private context; give several instances their
+ *  own contexts to run queries on one shared graph from several
+ *  threads (see Router).
+ *
  *************************************************************************/
 
  import java.awt.Color;
@@ -11,24 +16,46 @@
  
      private boolean useAStar = false;
      private int targetNode = -1;  // used for A* search
+     private Landmarks landmarks;  // ALT lower bounds for A*, or null
+     private boolean bidirectional = false;
  
      private final EuclideanGraph G;
+     private final QueryContext ctx;
      private final double[] dist;
      private final int[] pred;
+     private final double[] h;  // A* heuristic, valid where seen[v] == queryId
  
      // For resetting only touched vertices per query
      private int[] seen;
-     private int queryId = 1;
+     private int queryId;       // copy of ctx.queryId for the last search
+ 
+     // backward search state, allocated when bidirectional mode is enabled
+     private double[] distB;
+     private int[] predB;
+     private int[] seenB;
  
      // to record how many vertices were visited this run
      private int lastVisitedCount;
+     private int[] settleOrder;  // if set, one-way searches log settled vertices here
  
      public Dijkstra(EuclideanGraph G) {
+         this(G, new QueryContext(G.V()));
+     }
+ 
+     // search with the arrays of the given context
+     public Dijkstra(EuclideanGraph G, QueryContext ctx) {
          this.G = G;
-         int V  = G.V();
-         dist = new double[V];
-         pred = new int[V];
-         seen = new int[V];  // default 0 = never seen
+         this.ctx = ctx;
+         dist = ctx.dist;
+         pred = ctx.pred;
+         h    = ctx.h;
+         seen = ctx.seen;
+         queryId = ctx.queryId;
+     }
+ 
+     // the search state and metrics used by this instance
+     public QueryContext context() {
+         return ctx;
      }
  
      // enable A* mode by setting the target (goal) node
@@ -37,6 +64,22 @@
          targetNode = destination;
      }
  
+     // tighten the A* heuristic with landmark lower bounds (null = Euclidean only)
+     public void useLandmarks(Landmarks L) {
+         landmarks = L;
+     }
+ 
+     // search from both ends at once; stays on until turned off
+     public void enableBidirectional(boolean on) {
+         bidirectional = on;
+         if (on && distB == null) {
+             ctx.ensureBackward();
+             distB = ctx.distB;
+             predB = ctx.predB;
+             seenB = ctx.seenB;
+         }
+     }
+ 
      // run the algorithm once (caches pred[])
      public void compute(int s, int d) {
          dijkstra(s, d);
@@ -54,6 +97,44 @@
          return (seen[d] == queryId) ? dist[d] : INFINITY;
      }
  
+     // distance to v found by the last search; INFINITY if not reached
+     public double distTo(int v) {
+         return (seen[v] == queryId) ? dist[v] : INFINITY;
+     }
+
+     // predecessor of v on the last search's tree; -1 if not reached
+     public int predTo(int v) {
+         return (seen[v] == queryId) ? pred[v] : -1;
+     }
+
+     // plain one-way search from s until d is settled (d = -1: until the
+     // queue runs dry), logging settled vertices to order[] in the order
+     // they come off the queue; returns how many. order needs room for V.
+     // Every logged vertex has its final distTo() and predTo().
+     public int settle(int s, int d, int[] order) {
+         boolean wasBidirectional = bidirectional;
+         useAStar = false;
+         bidirectional = false;
+         settleOrder = order;
+         try { dijkstra(s, d); }
+         finally {
+             settleOrder = null;
+             bidirectional = wasBidirectional;
+         }
+         return lastVisitedCount;
+     }
+ 
+     // the vertices of the shortest path from s to d found by the last
+     // search, s first; empty if d is unreachable
+     public int[] path(int s, int d) {
+         if (seen[d] != queryId) return new int[0];
+         int n = 1;
+         for (int v = d; v != s; v = pred[v]) n++;
+         int[] path = new int[n];
+         for (int v = d, i = n - 1; i >= 0; v = pred[v], i--) path[i] = v;
+         return path;
+     }
+ 
      // Print the shortest path from s to d.
      public void showPath(int d, int s) {
          // if we never saw d in this query, it’s unreachable
@@ -76,38 +157,129 @@
          Turtle.render();
      }
  
+     // run a search from s with no target and copy out the full shortest
+     // path tree; unreachable vertices get INFINITY and pred -1
+     public void shortestPathTree(int s, double[] distTo, int[] predTo) {
+         useAStar = false;
+         dijkstra(s, -1);
+         for (int v = 0; v < G.V(); v++) {
+             boolean reached = (seen[v] == queryId);
+             distTo[v] = reached ? dist[v] : INFINITY;
+             if (predTo != null) predTo[v] = reached ? pred[v] : -1;
+         }
+     }
+ 
+     // distances from s to every vertex in targets, written to
+     // row[offset] .. row[offset + targets.length - 1] (INFINITY if
+     // unreachable); one plain search that stops once every target
+     // is settled
+     public void distances(int s, int[] targets, double[] row, int offset) {
+         if (targets.length == 0) return;     // nothing to settle
+         ctx.start();
+         queryId = ++ctx.queryId;
+         int[] isTarget = ctx.ensureTargets();
+         int remaining = 0;
+         for (int t : targets) {
+             if (isTarget[t] != queryId) {
+                 isTarget[t] = queryId;
+                 remaining++;
+             }
+         }
+
+         MinPQ pq = ctx.pq;
+         pq.clear();
+         dist[s] = 0.0;
+         pred[s] = s;
+         seen[s] = queryId;
+         pq.insert(s, 0.0);
+
+         int visitedCount = 0;
+         int relaxedCount = 0;
+         while (!pq.isEmpty()) {
+             int v = pq.delMin();
+             visitedCount++;
+             if (isTarget[v] == queryId && --remaining == 0) break;
+
+             relaxedCount += G.degree(v);
+             for (int e = G.begin(v), end = G.end(v); e < end; e++) {
+                 int w = G.target(e);
+                 double baseCost = dist[v] + G.weight(e);
+                 if (baseCost == EuclideanGraph.CLOSED) continue;   // closed edge
+                 if (seen[w] != queryId) {
+                     seen[w] = queryId;
+                     dist[w] = baseCost;
+                     pred[w] = v;
+                     pq.insert(w, baseCost);
+                 }
+                 else if (baseCost < dist[w] - EPSILON && pq.contains(w)) {
+                     dist[w] = baseCost;
+                     pred[w] = v;
+                     pq.change(w, baseCost);
+                 }
+             }
+         }
+
+         for (int i = 0; i < targets.length; i++) {
+             int t = targets[i];
+             row[offset + i] = (seen[t] == queryId) ? dist[t] : INFINITY;
+         }
+         lastVisitedCount = visitedCount;
+         ctx.record(visitedCount, relaxedCount, pq, null);
+         useAStar = false;
+     }
+
      // estimate memory usage of seen[] array
      public int seenMemoryBytes() {
          return seen.length * Integer.BYTES;
      }
  
+     // lower bound on the distance from v to the target, 0 without A*
+     private double heuristic(int v) {
+         if (!useAStar) return 0.0;
+         return lowerBound(v, targetNode);
+     }
+ 
+     // Euclidean distance, tightened by landmarks if we have them
+     private double lowerBound(int v, int t) {
+         double euclid = G.distance(v, t);
+         if (landmarks == null) return euclid;
+         return Math.max(euclid, landmarks.lowerBound(v, t));
+     }
+ 
      // optimized Dijkstra's 
      private void dijkstra(int s, int d) {
-         queryId++;  // start a new query
-         IndexPQ pq = new IndexPQ(G.V());
+         if (bidirectional && d >= 0) {
+             bidirectionalDijkstra(s, d);
+             return;
+         }
+ 
+         ctx.start();
+         queryId = ++ctx.queryId;  // start a new query
+         MinPQ pq = ctx.pq;        // reused, so no per-query allocation
+         pq.clear();
  
          // initialize only source vertex
          dist[s] = 0.0;
          pred[s] = s;
          seen[s] = queryId;
-         pq.insert(s, 0.0);
+         h[s] = heuristic(s);
+         pq.insert(s, h[s]);
  
          int visitedCount = 0;     // ← count how many vertices we pop
+         int relaxedCount = 0;     // edges scanned from them
  
          while (!pq.isEmpty()) {
              int v = pq.delMin();
+             if (settleOrder != null) settleOrder[visitedCount] = v;
              visitedCount++;       // ← increment on each visit
  
              if (v == d) break; // stop when hit dest (shortest path found)
  
-             for (IntIterator it = G.neighbors(v); it.hasNext(); ) { //LZ reset code
-                 int w = it.next();
-                 double baseCost = dist[v] + G.distance(v, w);
-                 if (useAStar) {
-                     // A* heuristic adjustment
-                     baseCost += G.distance(w, targetNode)
-                               - G.distance(v, targetNode);
-                 }
+             relaxedCount += G.degree(v);
+             for (int e = G.begin(v), end = G.end(v); e < end; e++) { //LZ reset code
+                 int w = G.target(e);
+                 double baseCost = dist[v] + G.weight(e);
+                 if (baseCost == EuclideanGraph.CLOSED) continue;   // closed edge
  
                  // if unseen or found shorter path
                  // if seen[w] != queryId, dist[w] and pred[w] may be garbage from an old query,
@@ -117,17 +289,131 @@
                      dist[w] = baseCost;
                      pred[w] = v;
                      if (seen[w] != queryId) {
-                         pq.insert(w, baseCost);
+                         // A* heuristic is evaluated once per touched vertex
+                         seen[w] = queryId;
+                         h[w] = heuristic(w);
+                         pq.insert(w, baseCost + h[w]);
+                     } else if (pq.contains(w)) {
+                         pq.change(w, baseCost + h[w]);
                      } else {
-                         pq.change(w, baseCost);
+                         // landmark bounds are stored as floats and can be a
+                         // hair inconsistent, so a settled vertex may reopen
+                         pq.insert(w, baseCost + h[w]);
                      }
-                     seen[w] = queryId;
                  }
              }
          }
  
          lastVisitedCount = visitedCount;
+         ctx.record(visitedCount, relaxedCount, pq, null);
          // reset A* for next call
          useAStar = false;
      }
+ 
+    /*********************************************************************
+     *  Bidirectional search. The forward search uses dist/pred/seen, the
+     *  backward one distB/predB/seenB, both stamped with the same
+     *  queryId. With A* both sides share the average potential
+     *
+     *      p(v) = (lowerBound(v, d) - lowerBound(v, s)) / 2
+     *
+     *  (forward keys add p, backward keys subtract it), which is
+     *  consistent in both directions, so the search can stop as soon as
+     *  the two smallest keys add up to the best s-d path seen so far.
+     *  h[v] holds p(v) once either side has touched v.
+     *********************************************************************/
+     private void bidirectionalDijkstra(int s, int d) {
+         ctx.start();
+         queryId = ++ctx.queryId;  // start a new query
+         MinPQ pqF = ctx.pq;
+         MinPQ pqB = ctx.pqB;
+         pqF.clear();
+         pqB.clear();
+         boolean aStar = useAStar;
+ 
+         double best = INFINITY;   // length of the best s-d path so far
+         int meet = -1;            // where that path crosses over
+ 
+         dist[s] = 0.0;
+         pred[s] = s;
+         seen[s] = queryId;
+         h[s] = aStar ? potential(s, s, d) : 0.0;
+         pqF.insert(s, h[s]);
+ 
+         distB[d] = 0.0;
+         predB[d] = d;
+         seenB[d] = queryId;
+         if (d != s) h[d] = aStar ? potential(d, s, d) : 0.0;
+         pqB.insert(d, -h[d]);
+ 
+         if (s == d) { best = 0.0; meet = s; }
+ 
+         int visitedCount = 0;
+         int relaxedCount = 0;
+         while (!pqF.isEmpty() && !pqB.isEmpty()) {
+             double topF = pqF.minPriority();
+             double topB = pqB.minPriority();
+             if (topF + topB >= best) break;
+ 
+             // alternate between the two sides, one vertex at a time
+             boolean forward = (visitedCount % 2 == 0);
+             MinPQ pq          = forward ? pqF   : pqB;
+             double[] distX    = forward ? dist  : distB;
+             int[] predX       = forward ? pred  : predB;
+             int[] seenX       = forward ? seen  : seenB;
+             double[] distY    = forward ? distB : dist;
+             int[] seenY       = forward ? seenB : seen;
+             double sign       = forward ? 1.0   : -1.0;
+ 
+             int v = pq.delMin();
+             visitedCount++;
+             relaxedCount += G.degree(v);
+ 
+             for (int e = G.begin(v), end = G.end(v); e < end; e++) {
+                 int w = G.target(e);
+                 double baseCost = distX[v] + G.weight(e);
+                 if (baseCost == EuclideanGraph.CLOSED) continue;   // closed edge
+ 
+                 if (seenX[w] != queryId || baseCost < distX[w] - EPSILON) {
+                     distX[w] = baseCost;
+                     predX[w] = v;
+                     if (seenX[w] != queryId) {
+                         if (seenY[w] != queryId) h[w] = aStar ? potential(w, s, d) : 0.0;
+                         seenX[w] = queryId;
+                         pq.insert(w, baseCost + sign * h[w]);
+                     } else if (pq.contains(w)) {
+                         pq.change(w, baseCost + sign * h[w]);
+                     } else {
+                         pq.insert(w, baseCost + sign * h[w]);
+                     }
+ 
+                     // w reached from both ends: a candidate s-d path
+                     if (seenY[w] == queryId && baseCost + distY[w] < best) {
+                         best = baseCost + distY[w];
+                         meet = w;
+                     }
+                 }
+             }
+         }
+ 
+         // splice the backward half onto pred[] so that showPath()/drawPath()
+         // and distance() work exactly as after a forward search
+         if (meet != -1) {
+             for (int v = meet; v != d; v = predB[v]) {
+                 int w = predB[v];
+                 pred[w] = v;
+                 seen[w] = queryId;
+             }
+             dist[d] = best;
+         }
+ 
+         lastVisitedCount = visitedCount;
+         ctx.record(visitedCount, relaxedCount, pqF, pqB);
+         useAStar = false;
+     }
+ 
+     // average of the two one-sided lower bounds, see above
+     private double potential(int v, int s, int d) {
+         return 0.5 * (lowerBound(v, d) - lowerBound(v, s));
+     }
  }
\ No newline at end of file
@@ -0,0 +1,87 @@
+/*************************************************************************
+ *  Compilation:  javac DistanceMatrix.java
+ *  Execution:    java DistanceMatrix graph-file sources targets [threads]
+ *  Dependencies: EuclideanGraph.java GraphFile.java Router.java Batch.java
+ *                Dijkstra.java QueryContext.java
+ *
+ *  Many-to-many distance tables. Each row is one one-to-many search
+ *  from a source (Dijkstra.distances), which stops as soon as every
+ *  target has been settled, so an S x T table costs S searches rather
+ *  than S x T. Rows are spread over a Batch worker pool, and the table
+ *  is one row-major double[]: entry (i, j) is at i * T + j.
+ *
+ *  The test client picks random sources and targets, builds the table
+ *  and checks a sample of entries against single-pair queries.
+ *
+ *  % java DistanceMatrix usa.txt 500 5000 8
+ *
+ *************************************************************************/
+
+import java.util.Random;
+
+public class DistanceMatrix {
+    private final Router router;
+    private final Batch batch;
+
+    public DistanceMatrix(Router router, int threads) {
+        this.router = router;
+        this.batch = new Batch(router, threads);
+    }
+
+    // distances from every source to every target, row-major;
+    // INFINITY (Double.MAX_VALUE) where unreachable
+    public double[] compute(final int[] sources, final int[] targets) {
+        final int T = targets.length;
+        final double[] table = new double[sources.length * T];
+        batch.run(sources.length, new Batch.Task() {
+            public void answer(QueryContext ctx, int i) {
+                new Dijkstra(router.graph(), ctx).distances(sources[i], targets, table, i * T);
+            }
+        });
+        return table;
+    }
+
+
+    // test client
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: java DistanceMatrix <graph-file> <sources> <targets> [threads]");
+            System.exit(1);
+        }
+        EuclideanGraph G = GraphFile.read(args[0]);
+        int S = Integer.parseInt(args[1]);
+        int T = Integer.parseInt(args[2]);
+        int threads = (args.length > 3) ? Integer.parseInt(args[3])
+                                        : Runtime.getRuntime().availableProcessors();
+
+        Random random = new Random(20240601L);
+        int[] sources = new int[S];
+        int[] targets = new int[T];
+        for (int i = 0; i < S; i++) sources[i] = random.nextInt(G.V());
+        for (int j = 0; j < T; j++) targets[j] = random.nextInt(G.V());
+
+        Router router = new Router(G);
+        DistanceMatrix matrix = new DistanceMatrix(router, threads);
+        long start = System.nanoTime();
+        double[] table = matrix.compute(sources, targets);
+        long end = System.nanoTime();
+        System.err.printf("%d x %d table on %d threads in %.3f s, %d vertices settled%n",
+                          S, T, threads, (end - start) / 1e9, router.settled());
+
+        // spot-check against single-pair A* queries
+        int checks = Math.min(1000, S * T);
+        router.resetMetrics();
+        start = System.nanoTime();
+        for (int c = 0; c < checks; c++) {
+            int i = random.nextInt(S);
+            int j = random.nextInt(T);
+            double d = router.distance(sources[i], targets[j]);
+            if (Math.abs(d - table[i * T + j]) > 1e-6)
+                throw new RuntimeException("Mismatch at " + sources[i] + " " + targets[j]
+                                           + ": " + table[i * T + j] + " vs " + d);
+        }
+        end = System.nanoTime();
+        System.err.printf("%d single-pair checks agree, %.3f ms per pair%n",
+                          checks, (end - start) / 1e6 / checks);
+    }
+}
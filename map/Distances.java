@@ -1,11 +1,13 @@
 /*************************************************************************
  *  Compilation:  javac Distances.java
- *  Execution:    java Distances file < input.txt
- *  Dependencies: EuclideanGraph.java Dijkstra.java In.java StdIn.java
+ *  Execution:    java Distances file [-order hilbert|bfs] < input.txt
+ *  Dependencies: EuclideanGraph.java GraphFile.java Dijkstra.java IntScanner.java
+ *                Renumbering.java
  *
  *  Reads in a map from a file, and repeatedly reads in two integers s
  *  and d from standard input, and prints the distance of the shortest
- *  path from s to d to standard output.
+ *  path from s to d to standard output. With -order the graph is
+ *  renumbered for locality at load time; queries keep the file's ids.
  *
  ****************************************************************************/
 
@@ -15,16 +17,22 @@ public class Distances {
     public static void main(String[] args) {
 
         // read in the graph from a file
-        In graphin = new In(args[0]);
-        EuclideanGraph G = new EuclideanGraph(graphin);
+        EuclideanGraph G = GraphFile.read(args[0]);   // text or binary
+        Renumbering ids = null;
+        if (args.length > 2 && args[1].equals("-order")) {
+            ids = Renumbering.of(args[2], G);
+            G = ids.graph();
+        }
         Dijkstra dijkstra = new Dijkstra(G);
         System.err.println("Done reading the graph " + args[0]);
         System.err.println("Enter query pairs from stdin");
 
         // read in the s-d pairs from standard input
-        while(!StdIn.isEmpty()) {
-            int s = StdIn.readInt();
-            int d = StdIn.readInt();
+        IntScanner in = new IntScanner(System.in);
+        while(!in.isEmpty()) {
+            int s = in.nextInt();
+            int d = in.nextInt();
+            if (ids != null) { s = ids.internal(s); d = ids.internal(d); }
             System.out.println(dijkstra.distance(s, d));
         }
     }
@@ -0,0 +1,266 @@
+/*************************************************************************
+ *  Compilation:  javac DynamicGraph.java
+ *  Execution:    java DynamicGraph graph-file [updates] [batch]
+ *  Dependencies: EuclideanGraph.java GraphFile.java Router.java RouteCache.java
+ *                TreeCache.java Dijkstra.java
+ *
+ *  Edge weight changes at runtime (slowdowns, closures) on top of an
+ *  immutable EuclideanGraph, published as copy-on-write snapshots.
+ *
+ *  setWeight(), close() and restore() stage changes; commit() publishes
+ *  them all at once as a new EuclideanGraph that shares the coordinate
+ *  and adjacency arrays with the base graph and keeps its weights in
+ *  blocks of EuclideanGraph.BLOCK slots. A commit copies only the blocks
+ *  holding a changed slot and shares every other block with the last
+ *  snapshot. A closed edge keeps its slots with the weight CLOSED, which
+ *  searches skip. A query holds on to the snapshot it started with and
+ *  sees one consistent graph from start to end.
+ *
+ *  A weight can never go below the edge's weight in the base graph,
+ *  its Euclidean length. That keeps the Euclidean A* heuristic and any
+ *  Landmarks built on the base graph admissible on every snapshot: all
+ *  distances can only have grown since. ContractionHierarchy has the
+ *  weights built in; one built from a DynamicGraph refuses queries once
+ *  a later commit has superseded its graph.
+ *
+ *  Listeners hear about each commit: the changed edges, and whether
+ *  every change was an increase (a raise or a closure). Router moves
+ *  new queries to the new snapshot; RouteCache and TreeCache drop only
+ *  the results that used a raised edge, and everything on a decrease.
+ *
+ *  Staging a change costs O(degree). A commit costs one block copy per
+ *  changed block plus a copy of the block table, one reference per
+ *  BLOCK slots, so it stays cheap however large the graph.
+ *
+ *  % java DynamicGraph usa.txt 10000 100
+ *
+ *************************************************************************/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class DynamicGraph {
+    private static final double CLOSED = EuclideanGraph.CLOSED;
+    private static final int BLOCK_SHIFT = EuclideanGraph.BLOCK_SHIFT;
+    private static final int BLOCK = EuclideanGraph.BLOCK;
+
+    // told about every commit, in the order added
+    public interface Listener {
+        // snapshot is now current; edges holds the endpoints of each
+        // changed edge, v0 w0 v1 w1 ...; raisedOnly if none got shorter
+        void updated(EuclideanGraph snapshot, int[] edges, boolean raisedOnly);
+    }
+
+    private final EuclideanGraph base;
+    private final double[] weights;       // weights[e] = current weight of base slot e, CLOSED if closed
+    private int closed;                   // closed slots
+
+    private volatile EuclideanGraph current;
+    private volatile long version;
+    private double[][] blocks;            // weights of current, by block; never written once published
+    private final boolean[] dirty;        // blocks with a staged change
+    private int[] dirtyList = new int[16];
+    private int dirtyCount;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private int[] staged = new int[16];       // endpoints of staged changes
+    private int stagedCount;
+    private boolean raisedOnly = true;
+
+    public DynamicGraph(EuclideanGraph base) {
+        this.base = base;
+        this.current = base;
+        weights = new double[2 * base.E()];
+        for (int e = 0; e < weights.length; e++) weights[e] = base.weight(e);
+        int n = (weights.length + BLOCK - 1) >>> BLOCK_SHIFT;
+        blocks = new double[n][];
+        for (int b = 0; b < n; b++) blocks[b] = block(b);
+        dirty = new boolean[n];
+    }
+
+    // the current snapshot, and how many commits led to it
+    public EuclideanGraph snapshot() { return current; }
+    public long version()            { return version; }
+    public EuclideanGraph base()     { return base; }
+
+    public void addListener(Listener listener) { listeners.add(listener); }
+
+    // set the weight of edge v-w, both directions; reopens it if closed
+    public synchronized void setWeight(int v, int w, double weight) {
+        if (!(weight < CLOSED)) throw new IllegalArgumentException("Weight must be finite; use close()");
+        stage(v, w, weight);
+    }
+
+    // take edge v-w out of the graph until restored
+    public synchronized void close(int v, int w) {
+        stage(v, w, CLOSED);
+    }
+
+    // back to the base weight, open
+    public synchronized void restore(int v, int w) {
+        stage(v, w, -1);
+    }
+
+    // current weight of edge v-w; infinity if closed
+    public synchronized double weight(int v, int w) {
+        for (int e = base.begin(v); e < base.end(v); e++)
+            if (base.target(e) == w) return weights[e];
+        throw new IllegalArgumentException("No edge " + v + "-" + w);
+    }
+
+    // staged changes not yet committed
+    public synchronized int staged() { return stagedCount / 2; }
+
+    // publish the staged changes as a new snapshot and tell the listeners
+    public EuclideanGraph commit() {
+        EuclideanGraph snapshot;
+        int[] edges;
+        boolean raised;
+        synchronized (this) {
+            if (stagedCount == 0) return current;
+            snapshot = build();
+            edges = Arrays.copyOf(staged, stagedCount);
+            raised = raisedOnly;
+            stagedCount = 0;
+            raisedOnly = true;
+            current = snapshot;
+            version++;
+            // listeners run under the lock so that commits reach them in order
+            for (Listener l : listeners) l.updated(snapshot, edges, raised);
+        }
+        return snapshot;
+    }
+
+
+    // set every slot of v-w (weight -1: base weight) and log the change
+    private void stage(int v, int w, double weight) {
+        if (!check(v, w, weight) | !check(w, v, weight))
+            throw new IllegalArgumentException("No edge " + v + "-" + w);
+        set(v, w, weight);
+        if (w != v) set(w, v, weight);
+        if (stagedCount == staged.length) staged = Arrays.copyOf(staged, 2 * stagedCount);
+        staged[stagedCount++] = v;
+        staged[stagedCount++] = w;
+    }
+
+    // true if v has a slot to w; throws if weight is below its base weight
+    private boolean check(int v, int w, double weight) {
+        boolean found = false;
+        for (int e = base.begin(v); e < base.end(v); e++) {
+            if (base.target(e) != w) continue;
+            found = true;
+            if (weight >= 0 && weight < base.weight(e))
+                throw new IllegalArgumentException("Weight of " + v + "-" + w + " below its length " + base.weight(e));
+        }
+        return found;
+    }
+
+    private void set(int v, int w, double weight) {
+        for (int e = base.begin(v); e < base.end(v); e++) {
+            if (base.target(e) != w) continue;
+            double next = (weight < 0) ? base.weight(e) : weight;
+            double old = weights[e];
+            if (next < old) raisedOnly = false;
+            if ((old == CLOSED) != (next == CLOSED))
+                closed += (next == CLOSED) ? 1 : -1;
+            weights[e] = next;
+            int b = e >>> BLOCK_SHIFT;
+            if (!dirty[b]) {
+                dirty[b] = true;
+                if (dirtyCount == dirtyList.length) dirtyList = Arrays.copyOf(dirtyList, 2 * dirtyCount);
+                dirtyList[dirtyCount++] = b;
+            }
+        }
+    }
+
+    // a new EuclideanGraph from the current weights: fresh copies of the
+    // changed blocks, the others shared with the last snapshot
+    private EuclideanGraph build() {
+        blocks = blocks.clone();
+        for (int i = 0; i < dirtyCount; i++) {
+            int b = dirtyList[i];
+            blocks[b] = block(b);
+            dirty[b] = false;
+        }
+        dirtyCount = 0;
+        return base.withWeights(blocks);
+    }
+
+    // copy of block b of the current weights
+    private double[] block(int b) {
+        int from = b << BLOCK_SHIFT;
+        return Arrays.copyOfRange(weights, from, Math.min(weights.length, from + BLOCK));
+    }
+
+
+    // test client: a stream of random slowdowns and closures, committed
+    // in batches, with Router, RouteCache and TreeCache following along
+    public static void main(String[] args) {
+        EuclideanGraph G = GraphFile.read(args[0]);
+        int updates = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+        int batch = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+
+        DynamicGraph dynamic = new DynamicGraph(G);
+        Router router = new Router(G);
+        RouteCache cache = new RouteCache(router, 10000, RouteCache.Policy.LRU, true);
+        TreeCache trees = new TreeCache(router, 64L << 20, 1);
+        dynamic.addListener(router);
+        dynamic.addListener(cache);
+        dynamic.addListener(trees);
+
+        Random random = new Random(20240601L);
+        int[] pairs = new int[2 * 50];              // queries repeat, so caches hit
+        for (int i = 0; i < pairs.length; i++) pairs[i] = random.nextInt(G.V());
+        List<int[]> closedEdges = new ArrayList<int[]>();
+
+        long stageNanos = 0, commitNanos = 0;
+        int commits = 0, checks = 0;
+        for (int u = 0; u < updates; u++) {
+            int v = random.nextInt(G.V());
+            if (G.degree(v) == 0) continue;
+            int w = G.target(G.begin(v) + random.nextInt(G.degree(v)));
+            long t0 = System.nanoTime();
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                dynamic.close(v, w);
+                closedEdges.add(new int[] { v, w });
+            }
+            else if (kind == 1 && !closedEdges.isEmpty()) {
+                int[] edge = closedEdges.remove(closedEdges.size() - 1);
+                dynamic.restore(edge[0], edge[1]);
+            }
+            else dynamic.setWeight(v, w, G.distance(v, w) * (1 + 3 * random.nextDouble()));
+            stageNanos += System.nanoTime() - t0;
+
+            if (dynamic.staged() < batch) continue;
+            t0 = System.nanoTime();
+            EuclideanGraph snapshot = dynamic.commit();
+            commitNanos += System.nanoTime() - t0;
+            commits++;
+
+            // queries through the caches and the router against plain
+            // Dijkstra on the new snapshot
+            Dijkstra plain = new Dijkstra(snapshot);
+            for (int q = 0; q < 10; q++) {
+                int p = random.nextInt(pairs.length / 2);
+                int s = pairs[2 * p], d = pairs[2 * p + 1];
+                double expect = plain.distance(s, d);
+                double[] got = { router.distance(s, d), cache.distance(s, d), trees.distance(s, d) };
+                for (double x : got)
+                    if (Math.abs(x - expect) > 1e-6)
+                        throw new RuntimeException("Stale distance " + s + "-" + d + ": " + x + " vs " + expect);
+                checks++;
+            }
+        }
+        System.err.printf("%d updates in %d commits of %d: %.2f us to stage, %.3f ms to commit%n",
+                          updates, commits, batch, stageNanos / 1e3 / updates, commitNanos / 1e6 / Math.max(1, commits));
+        System.err.printf("%d edges closed at the end; %d checked queries agree with plain Dijkstra%n",
+                          dynamic.closed / 2, checks);
+        System.err.printf("route cache %d hits / %d misses / %d invalidated, tree cache %d hits / %d misses / %d invalidated%n",
+                          cache.hits(), cache.misses(), cache.invalidations(),
+                          trees.hits(), trees.misses(), trees.invalidations());
+    }
+}
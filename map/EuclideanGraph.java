@@ -1,11 +1,35 @@
 /*************************************************************************
  *  Compilation:  javac EuclideanGraph.java
  *  Execution:    java EuclideanGraph
- *  Dependencies: In.java IntIterator.java
- *  
+ *  Dependencies: In.java IntScanner.java IntIterator.java
+ *
  *  Undirected graph of points in the plane, where the edge weights
  *  are the Euclidean distances.
  *
+ *  Adjacency is stored in compressed-sparse-row form: the neighbors
+ *  of v are targets[offsets[v]] through targets[offsets[v+1] - 1].
+ *  Each undirected edge appears once in the list of each endpoint.
+ *
+ *  Edge weights are computed once at load time and kept in an array
+ *  parallel to targets[], so searches never call Math.sqrt. Pass
+ *  floatWeights = true to store them as floats and halve the memory.
+ *  DynamicGraph snapshots keep theirs in blocks of BLOCK slots, so a
+ *  commit copies only the blocks it changed, and give a closed slot
+ *  the weight CLOSED; searches skip such slots.
+ *
+ *  Coordinates are kept in two int arrays rather than one Point per
+ *  vertex: 8 bytes a vertex instead of about 32, and distance(v, w),
+ *  which the A* heuristic calls on every edge, reads two arrays with
+ *  no pointer to follow. point(v) builds a Point for drawing.
+ *
+ *  Hot loops should walk the edge slots directly, which allocates
+ *  nothing:
+ *
+ *      for (int e = G.begin(v); e < G.end(v); e++) {
+ *          int w = G.target(e);
+ *          ...
+ *      }
+ *
  *************************************************************************/
 
 
@@ -13,28 +37,29 @@ public class EuclideanGraph {
     // for portability
     private final static String NEWLINE = System.getProperty("line.separator");
 
+    // weight of an edge slot closed in a DynamicGraph snapshot
+    public static final double CLOSED = Double.POSITIVE_INFINITY;
+
+    // edge slots per weight block of a DynamicGraph snapshot
+    static final int BLOCK_SHIFT = 10;
+    static final int BLOCK = 1 << BLOCK_SHIFT;
+
     private int V;            // number of vertices
     private int E;            // number of edges
-    private Node[]  adj;      // adjacency lists
-    private Point[] points;   // points in the plane
-    
-    // node helper class for adjacency list
-    private static class Node {
-        int v;
-        Node next;
-        Node(int v, Node next) { this.v = v; this.next = next; }
-    }
-
-    // iterator for adjacency list
-    private class AdjListIterator implements IntIterator {
-        private Node x;
-        AdjListIterator(Node x)  { this.x = x; }
-        public boolean hasNext() { return x != null; }
-        public int next() { 
-            int v = x.v;
-            x = x.next;
-            return v;
-        }
+    private int[] offsets;    // offsets[v] = first edge slot of v, length V+1
+    private int[] targets;    // targets[e] = other endpoint of edge slot e
+    private double[] weights; // weights[e] = length of edge slot e, or null
+    private float[] fweights; // same in single precision, or null
+    private double[][] blocks; // same in blocks of BLOCK slots, or null
+    private int[] xs, ys;     // coordinates of the vertices in the plane
+
+    // iterator over a range of edge slots
+    private class EdgeRangeIterator implements IntIterator {
+        private int e;
+        private final int end;
+        EdgeRangeIterator(int begin, int end) { this.e = begin; this.end = end; }
+        public boolean hasNext() { return e < end; }
+        public int next() { return targets[e++]; }
     }
 
 
@@ -45,44 +70,204 @@ public class EuclideanGraph {
     *  edge: from to
     *******************************************************************/
     public EuclideanGraph(In in) {
-        V = Integer.parseInt(in.readString());
-        E = Integer.parseInt(in.readString());
+        this(in, false);
+    }
+
+    public EuclideanGraph(In in, boolean floatWeights) {
+        read(tokens(in), floatWeights);
+    }
+
+    // same format, parsed without a String per number; see IntScanner
+    public EuclideanGraph(IntScanner in) {
+        this(in, false);
+    }
+
+    public EuclideanGraph(IntScanner in, boolean floatWeights) {
+        read(in, floatWeights);
+    }
+
+    // the ints of In, one String at a time
+    private static IntIterator tokens(final In in) {
+        return new IntIterator() {
+            private String token = in.readString();
+            public boolean hasNext() { return token != null; }
+            public int next() {
+                int n = Integer.parseInt(token);
+                token = in.readString();
+                return n;
+            }
+        };
+    }
+
+    private void read(IntIterator in, boolean floatWeights) {
+        V = in.next();
+        E = in.next();
 
         // read in and insert vertices
-        points = new Point[V];
+        xs = new int[V];
+        ys = new int[V];
         for (int i = 0; i < V; i++) {
-            int v = Integer.parseInt(in.readString());
-            int x = Integer.parseInt(in.readString());
-            int y = Integer.parseInt(in.readString());
+            int v = in.next();
+            int x = in.next();
+            int y = in.next();
             if (v < 0 || v >= V) throw new RuntimeException("Illegal vertex number");
-            points[v] = new Point(x, y);
+            xs[v] = x;
+            ys[v] = y;
         }
 
-        // read in and insert edges
-        adj = new Node[V];
+        // read in edges, counting the degree of each vertex
+        int[] from = new int[E];
+        int[] to   = new int[E];
+        offsets = new int[V + 1];
         for (int i = 0; i < E; i++) {
-            int v = Integer.parseInt(in.readString());
-            int w = Integer.parseInt(in.readString());
+            int v = in.next();
+            int w = in.next();
             if (v < 0 || v >= V) throw new RuntimeException("Illegal vertex number");
             if (w < 0 || w >= V) throw new RuntimeException("Illegal vertex number");
-            adj[v] = new Node(w, adj[v]);
-            adj[w] = new Node(v, adj[w]);
+            from[i] = v;
+            to[i]   = w;
+            offsets[v + 1]++;
+            offsets[w + 1]++;
+        }
+
+        // prefix sums turn degrees into offsets
+        for (int v = 0; v < V; v++)
+            offsets[v + 1] += offsets[v];
+
+        // fill the edge slots, last edge first, so that neighbors come
+        // out in the same order as the old prepend-to-list construction
+        targets = new int[2 * E];
+        int[] next = new int[V];
+        System.arraycopy(offsets, 0, next, 0, V);
+        for (int i = E - 1; i >= 0; i--) {
+            int v = from[i];
+            int w = to[i];
+            targets[next[v]++] = w;
+            targets[next[w]++] = v;
+        }
+
+        computeWeights(floatWeights);
+    }
+
+    // from already built arrays, as GraphFile loads them; weights of the
+    // requested precision are used as given, otherwise computed here
+    EuclideanGraph(int[] xs, int[] ys, int[] offsets, int[] targets,
+                   double[] weights, float[] fweights, boolean floatWeights) {
+        this.V = xs.length;
+        this.E = targets.length / 2;
+        this.xs = xs;
+        this.ys = ys;
+        this.offsets = offsets;
+        this.targets = targets;
+        if (floatWeights && fweights != null)      this.fweights = fweights;
+        else if (!floatWeights && weights != null) this.weights = weights;
+        else computeWeights(floatWeights);
+    }
+
+    // copy of this graph with vertex toExternal[i] renamed i; each
+    // neighbor list keeps its order. See Renumbering.
+    EuclideanGraph renumber(int[] toExternal) {
+        int[] toInternal = new int[V];
+        for (int i = 0; i < V; i++) toInternal[toExternal[i]] = i;
+
+        int[] newXs = new int[V];
+        int[] newYs = new int[V];
+        int[] newOffsets = new int[V + 1];
+        int[] newTargets = new int[targets.length];
+        double[] newWeights = (fweights == null) ? new double[targets.length] : null;
+        float[] newFweights = (fweights != null) ? new float[targets.length] : null;
+        int slot = 0;
+        for (int i = 0; i < V; i++) {
+            int v = toExternal[i];
+            newXs[i] = xs[v];
+            newYs[i] = ys[v];
+            newOffsets[i] = slot;
+            for (int e = offsets[v]; e < offsets[v + 1]; e++, slot++) {
+                newTargets[slot] = toInternal[targets[e]];
+                if (fweights == null) newWeights[slot]  = weight(e);
+                else                  newFweights[slot] = fweights[e];
+            }
+        }
+        newOffsets[V] = slot;
+        return new EuclideanGraph(newXs, newYs, newOffsets, newTargets, newWeights, newFweights, fweights != null);
+    }
+
+    // same vertices and edges with weights in blocks, sharing every other
+    // array; for DynamicGraph snapshots
+    EuclideanGraph withWeights(double[][] blocks) {
+        return new EuclideanGraph(this, blocks);
+    }
+
+    private EuclideanGraph(EuclideanGraph G, double[][] blocks) {
+        this.V = G.V;
+        this.E = G.E;
+        this.xs = G.xs;
+        this.ys = G.ys;
+        this.offsets = G.offsets;
+        this.targets = G.targets;
+        this.blocks = blocks;
+    }
+
+    // precompute the length of every edge slot, once per load
+    private void computeWeights(boolean useFloat) {
+        if (useFloat) fweights = new float[targets.length];
+        else          weights  = new double[targets.length];
+        for (int v = 0; v < V; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                double d = distance(v, targets[e]);
+                if (useFloat) fweights[e] = roundUp(d);
+                else          weights[e]  = d;
+            }
         }
     }
 
+    // never round an edge below its straight-line length, or the
+    // Euclidean A* heuristic would stop being a lower bound
+    static float roundUp(double d) {
+        float f = (float) d;
+        return (f < d) ? Math.nextUp(f) : f;
+    }
+
 
     // accessor methods
     public int V() { return V; }
     public int E() { return E; }
-    public Point point(int i) { return points[i]; }
+    public int x(int v) { return xs[v]; }
+    public int y(int v) { return ys[v]; }
+
+    // a new Point with the coordinates of v, for drawing
+    public Point point(int v) { return new Point(xs[v], ys[v]); }
 
     // Euclidean distance from v to w
-    public double distance(int v, int w) { return points[v].distanceTo(points[w]); }
+    public double distance(int v, int w) {
+        double dx = xs[v] - xs[w];
+        double dy = ys[v] - ys[w];
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+
+    // edge slots of v are begin(v) .. end(v)-1
+    public int begin(int v)  { return offsets[v];     }
+    public int end(int v)    { return offsets[v + 1]; }
+    public int degree(int v) { return offsets[v + 1] - offsets[v]; }
+
+    // the endpoint of edge slot e that is not its owner
+    public int target(int e) { return targets[e]; }
+
+    // precomputed length of edge slot e
+    public double weight(int e) {
+        if (weights != null) return weights[e];
+        if (fweights != null) return fweights[e];
+        return blocks[e >>> BLOCK_SHIFT][e & (BLOCK - 1)];
+    }
+
+    // true if weights are stored in single precision
+    public boolean hasFloatWeights() { return fweights != null; }
 
 
     // return iterator for list of neighbors of v
     public IntIterator neighbors(int v) {
-        return new AdjListIterator(adj[v]);
+        return new EdgeRangeIterator(offsets[v], offsets[v + 1]);
     }
 
 
@@ -92,9 +277,9 @@ public class EuclideanGraph {
         s += "V = " + V + NEWLINE;
         s += "E = " + E + NEWLINE;
         for (int v = 0; v < V && v < 100; v++) {
-            String t = v + " " + points[v] + ": ";
-            for (Node x = adj[v]; x != null; x = x.next)
-                t += x.v + " ";
+            String t = v + " " + point(v) + ": ";
+            for (int e = offsets[v]; e < offsets[v + 1]; e++)
+                t += targets[e] + " ";
             s += t + NEWLINE;
         }
         return s;
@@ -104,10 +289,11 @@ public class EuclideanGraph {
     // draw the graph in turtle graphics
     public void draw() {
         for (int v = 0; v < V; v++) {
-            points[v].draw();
-            for (Node x = adj[v]; x != null; x = x.next) {
-                int w = x.v;
-                points[v].drawTo(points[w]);
+            Point p = point(v);
+            p.draw();
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                p.drawTo(point(w));
             }
         }
         Turtle.render();
@@ -0,0 +1,300 @@
+/*************************************************************************
+ *  Compilation:  javac GraphFile.java
+ *  Execution:    java GraphFile text-file binary-file [-float|-noweights]
+ *  Dependencies: EuclideanGraph.java IntScanner.java In.java GraphLoader.java
+ *
+ *  Compact binary form of an EuclideanGraph, so a process can start
+ *  answering queries without parsing the text format.
+ *
+ *  The file is little-endian and laid out so every array can be
+ *  bulk-copied out of a memory-mapped view:
+ *
+ *      int     MAGIC, VERSION, V, E, weight kind, padding
+ *      int     x[V], y[V]
+ *      int     offsets[V+1]
+ *      int     targets[2E]
+ *      int     padding, only if needed to 8-align the weights
+ *      double  weights[2E]   or   float weights[2E]   or nothing
+ *
+ *  read() maps the file with FileChannel.map, a region of up to 1 GB at
+ *  a time so files past 2 GB load too, and copies the arrays onto the
+ *  heap, since the search loops index plain int[] and double[] arrays.
+ *  Mapping only makes the load fast: once copied, every process holds
+ *  its own arrays and nothing stays shared. write() streams the file
+ *  through a fixed buffer, so it has no size limit either.
+ *
+ *  The converter writes double weights unless told otherwise. A file
+ *  without weights, or with the other precision, gets them computed
+ *  from the coordinates at load time, exactly as the text loader does.
+ *  Text files are parsed serially unless the caller asks for more
+ *  threads, or the graph.threads system property does, in which case
+ *  GraphLoader parses them on that many.
+ *  GraphGenerator streams synthetic graphs straight into this layout.
+ *
+ *  % java GraphFile usa.txt usa.bin
+ *
+ *************************************************************************/
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class GraphFile {
+    static final int MAGIC   = 0x45475246;   // "EGRF"
+    static final int VERSION = 1;
+    private static final int HEADER  = 6 * Integer.BYTES;
+    private static final long REGION = 1L << 30;   // bytes mapped at a time, at most
+
+    // weight kinds stored in the header
+    static final int NO_WEIGHTS     = 0;
+    static final int DOUBLE_WEIGHTS = 1;
+    static final int FLOAT_WEIGHTS  = 2;
+
+    private GraphFile() { }
+
+
+    // load a graph from either format, telling them apart by the magic number
+    public static EuclideanGraph read(String name) {
+        return read(name, false);
+    }
+
+    public static EuclideanGraph read(String name, boolean floatWeights) {
+        return read(name, floatWeights, Integer.getInteger("graph.threads", 1));
+    }
+
+    // the same, parsing text on threads threads when there is more than one
+    public static EuclideanGraph read(String name, boolean floatWeights, int threads) {
+        if (isBinary(name)) return readBinary(name, floatWeights);
+        if (threads > 1) return GraphLoader.read(name, floatWeights, threads);
+        return new EuclideanGraph(IntScanner.open(name), floatWeights);
+    }
+
+    // true if name is a readable file that starts with the binary magic number
+    public static boolean isBinary(String name) {
+        try (RandomAccessFile file = new RandomAccessFile(name, "r")) {
+            if (file.length() < HEADER) return false;
+            return Integer.reverseBytes(file.readInt()) == MAGIC;
+        }
+        catch (IOException e) { return false; }
+    }
+
+
+    // memory-map a binary graph file and copy its arrays onto the heap
+    public static EuclideanGraph readBinary(String name, boolean floatWeights) {
+        try (RandomAccessFile file = new RandomAccessFile(name, "r");
+             FileChannel channel = file.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER) throw new RuntimeException("Not a binary graph file: " + name);
+            ByteBuffer header = region(channel, 0, HEADER);
+            if (header.getInt() != MAGIC)
+                throw new RuntimeException("Not a binary graph file: " + name);
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new RuntimeException("Unsupported graph file version " + version);
+            int V    = header.getInt();
+            int E    = header.getInt();
+            int kind = header.getInt();
+            if (V < 0 || E < 0 || kind < NO_WEIGHTS || kind > FLOAT_WEIGHTS)
+                throw new RuntimeException("Corrupt graph file header: " + name);
+            if (size != fileSize(V, E, kind))
+                throw new RuntimeException("Graph file has the wrong length: " + name);
+
+            int[] xs      = new int[V];
+            int[] ys      = new int[V];
+            int[] offsets = new int[V + 1];
+            int[] targets = new int[2 * E];
+            long pos = HEADER;
+            pos = readInts(channel, pos, xs);
+            pos = readInts(channel, pos, ys);
+            pos = readInts(channel, pos, offsets);
+            readInts(channel, pos, targets);
+
+            double[] weights = null;
+            float[] fweights = null;
+            if (kind == DOUBLE_WEIGHTS && !floatWeights) {
+                weights = new double[2 * E];
+                readDoubles(channel, weightStart(V, E), weights);
+            }
+            else if (kind == FLOAT_WEIGHTS && floatWeights) {
+                fweights = new float[2 * E];
+                readFloats(channel, weightStart(V, E), fweights);
+            }
+
+            // bare bones error checking, as for the text format
+            if (offsets[0] != 0 || offsets[V] != 2 * E)
+                throw new RuntimeException("Corrupt adjacency offsets in " + name);
+            for (int v = 0; v < V; v++)
+                if (offsets[v] > offsets[v + 1]) throw new RuntimeException("Corrupt adjacency offsets in " + name);
+            for (int e = 0; e < 2 * E; e++)
+                if (targets[e] < 0 || targets[e] >= V) throw new RuntimeException("Illegal vertex number");
+
+            return new EuclideanGraph(xs, ys, offsets, targets, weights, fweights, floatWeights);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not read graph file " + name, e);
+        }
+    }
+
+    // map length bytes at pos; a mapping cannot pass 2 GB, so files
+    // larger than that are read a region at a time
+    private static ByteBuffer region(FileChannel channel, long pos, long length) throws IOException {
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+        return map.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // bulk-copy a.length ints from pos on; returns the position after them
+    private static long readInts(FileChannel channel, long pos, int[] a) throws IOException {
+        int step = (int) (REGION / Integer.BYTES);
+        for (int i = 0; i < a.length; i += step) {
+            int n = Math.min(step, a.length - i);
+            region(channel, pos + (long) i * Integer.BYTES, (long) n * Integer.BYTES).asIntBuffer().get(a, i, n);
+        }
+        return pos + (long) a.length * Integer.BYTES;
+    }
+
+    private static void readDoubles(FileChannel channel, long pos, double[] a) throws IOException {
+        int step = (int) (REGION / Double.BYTES);
+        for (int i = 0; i < a.length; i += step) {
+            int n = Math.min(step, a.length - i);
+            region(channel, pos + (long) i * Double.BYTES, (long) n * Double.BYTES).asDoubleBuffer().get(a, i, n);
+        }
+    }
+
+    private static void readFloats(FileChannel channel, long pos, float[] a) throws IOException {
+        int step = (int) (REGION / Float.BYTES);
+        for (int i = 0; i < a.length; i += step) {
+            int n = Math.min(step, a.length - i);
+            region(channel, pos + (long) i * Float.BYTES, (long) n * Float.BYTES).asFloatBuffer().get(a, i, n);
+        }
+    }
+
+
+    // write G in binary form, one section at a time through a fixed
+    // buffer; kind is one of the weight kinds above
+    private static void write(EuclideanGraph G, String name, int kind) {
+        int V = G.V();
+        int E = G.E();
+        try (Sink sink = new Sink(name)) {
+            sink.putInt(MAGIC).putInt(VERSION).putInt(V).putInt(E).putInt(kind).putInt(0);
+            for (int v = 0; v < V; v++) sink.putInt(G.x(v));
+            for (int v = 0; v < V; v++) sink.putInt(G.y(v));
+            for (int v = 0; v < V; v++) sink.putInt(G.begin(v));
+            sink.putInt(2 * E);
+            for (int e = 0; e < 2 * E; e++) sink.putInt(G.target(e));
+
+            if (kind == NO_WEIGHTS) return;
+            while (sink.written() < weightStart(V, E)) sink.putInt(0);
+            for (int e = 0; kind == DOUBLE_WEIGHTS && e < 2 * E; e++) sink.putDouble(G.weight(e));
+            for (int e = 0; kind == FLOAT_WEIGHTS  && e < 2 * E; e++) sink.putFloat((float) G.weight(e));
+        }
+    }
+
+    // byte offset of the weights, 8-aligned so doubles never straddle
+    static long weightStart(int V, int E) {
+        long ints = HEADER / Integer.BYTES + 2L * V + (V + 1) + 2L * E;
+        long bytes = ints * Integer.BYTES;
+        return (bytes + 7) & ~7L;
+    }
+
+    static long fileSize(int V, int E, int kind) {
+        long size = HEADER + (2L * V + (V + 1) + 2L * E) * Integer.BYTES;
+        if (kind == DOUBLE_WEIGHTS) size = weightStart(V, E) + 2L * E * Double.BYTES;
+        if (kind == FLOAT_WEIGHTS)  size = weightStart(V, E) + 2L * E * Float.BYTES;
+        return size;
+    }
+
+
+    // a file written through one reused buffer, little-endian for the
+    // binary format; GraphGenerator also writes text through it, with
+    // numbers formatted by hand
+    static final class Sink implements AutoCloseable {
+        private final String name;
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private final byte[] digits = new byte[11];
+        private long flushed;
+
+        Sink(String name) {
+            this.name = name;
+            try {
+                file = new RandomAccessFile(name, "rw");
+                file.setLength(0);
+                channel = file.getChannel();
+            }
+            catch (IOException e) { throw new RuntimeException("Could not write " + name, e); }
+        }
+
+        long written() { return flushed + buf.position(); }
+
+        Sink putInt(int n)         { room(Integer.BYTES); buf.putInt(n);    return this; }
+        Sink putFloat(float f)     { room(Float.BYTES);   buf.putFloat(f);  return this; }
+        Sink putDouble(double d)   { room(Double.BYTES);  buf.putDouble(d); return this; }
+        void space()               { room(1); buf.put((byte) ' ');  }
+        void newline()             { room(1); buf.put((byte) '\n'); }
+
+        void number(int n) {
+            room(digits.length);
+            long m = n;
+            if (m < 0) { buf.put((byte) '-'); m = -m; }
+            int k = digits.length;
+            do { digits[--k] = (byte) ('0' + m % 10); m /= 10; } while (m > 0);
+            buf.put(digits, k, digits.length - k);
+        }
+
+        private void room(int bytes) {
+            if (buf.remaining() < bytes) flush();
+        }
+
+        private void flush() {
+            buf.flip();
+            try { while (buf.hasRemaining()) flushed += channel.write(buf); }
+            catch (IOException e) { throw new RuntimeException("Could not write " + name, e); }
+            buf.clear();
+        }
+
+        public void close() {
+            flush();
+            try { file.close(); }
+            catch (IOException e) { throw new RuntimeException("Could not write " + name, e); }
+        }
+    }
+
+
+    // converter: text graph to binary, then compare load times
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java GraphFile <text-file> <binary-file> [-float|-noweights]");
+            System.exit(1);
+        }
+        int kind = DOUBLE_WEIGHTS;
+        if (args.length > 2 && args[2].equals("-float"))     kind = FLOAT_WEIGHTS;
+        if (args.length > 2 && args[2].equals("-noweights")) kind = NO_WEIGHTS;
+        boolean useFloat = (kind == FLOAT_WEIGHTS);
+
+        long start = System.nanoTime();
+        EuclideanGraph G = new EuclideanGraph(IntScanner.open(args[0]), useFloat);
+        long textTime = System.nanoTime() - start;
+
+        write(G, args[1], kind);
+
+        start = System.nanoTime();
+        EuclideanGraph H = readBinary(args[1], useFloat);
+        long binaryTime = System.nanoTime() - start;
+
+        for (int v = 0; v < G.V(); v++)
+            if (G.begin(v) != H.begin(v) || G.end(v) != H.end(v))
+                throw new RuntimeException("Round trip changed the adjacency of " + v);
+        for (int e = 0; e < 2 * G.E(); e++)
+            if (G.target(e) != H.target(e) || G.weight(e) != H.weight(e))
+                throw new RuntimeException("Round trip changed edge slot " + e);
+
+        System.err.printf("V = %d, E = %d, wrote %s (%d bytes)%n",
+                          G.V(), G.E(), args[1], fileSize(G.V(), G.E(), kind));
+        System.err.printf("text load %.1f ms, binary load %.1f ms%n",
+                          textTime / 1e6, binaryTime / 1e6);
+    }
+}
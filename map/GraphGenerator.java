@@ -0,0 +1,296 @@
+/*************************************************************************
+ *  Compilation:  javac GraphGenerator.java
+ *  Execution:    java GraphGenerator vertices out-file [-type grid|delaunay]
+ *                    [-seed n] [-binary|-float|-noweights]
+ *                    [-short query-file count] [-long query-file count]
+ *  Dependencies: GraphFile.java EuclideanGraph.java
+ *
+ *  Synthetic road-like graphs of any size, for testing beyond usa.txt,
+ *  in the text format (V E / id x y / from to) or GraphFile's binary
+ *  format, with query files to match.
+ *
+ *  The vertices are a rows x cols grid, numbered row by row, each moved
+ *  off its grid point by up to 20% of the spacing in x and y, little
+ *  enough that every square stays convex.
+ *
+ *      grid       the four grid neighbors, with 10% of the edges dropped
+ *                 and a diagonal in 20% of the squares
+ *      delaunay   the four grid neighbors and a diagonal in every square:
+ *                 a triangulation of the points, close to their Delaunay
+ *                 triangulation
+ *
+ *  The diagonal of a square is always the shorter one, as a Delaunay
+ *  flip would pick, so no two edges cross and the graph is planar. A
+ *  spanning tree (every vertex but the first linked to its left or
+ *  upper neighbor) is never dropped, so the graph is connected.
+ *
+ *  Nothing is stored: the jitter of a vertex and the presence of an
+ *  edge are hashes of the seed and the position, recomputed wherever
+ *  they are needed. The generator makes one pass to count the edges for
+ *  the header and then streams each section through a 1 MB buffer, so
+ *  memory use does not grow with the graph. A binary file comes out
+ *  byte for byte as GraphFile would convert the text one.
+ *
+ *  Short queries pair a random vertex with one at most 16 rows and 16
+ *  columns away; long queries pair two random vertices.
+ *
+ *  % java GraphGenerator 10000000 grid10m.txt -type grid -short grid10m-short.txt 5000
+ *  % java GraphGenerator 10000000 grid10m.bin -binary -long grid10m-long.txt 1000
+ *
+ *************************************************************************/
+
+public class GraphGenerator {
+    private static final int SPACING = 100;       // grid spacing in coordinate units
+    private static final int JITTER  = 20;        // largest move off the grid point; keeps squares convex
+    private static final int NEAR    = 16;        // reach of short queries, in rows and columns
+
+    // what chance() is asked about, one salt each
+    private static final int JITTER_X = 0, JITTER_Y = 1, PARENT = 2, RIGHT = 3, DOWN = 4, DIAGONAL = 5;
+
+    // edge kinds, in the order the text format lists a vertex's edges
+    private static final int KIND_RIGHT = 0, KIND_DOWN = 1, KIND_DIAGONAL = 2;
+
+    private final int rows, cols;
+    private final long seed;
+    private final double drop;        // chance a non-tree grid edge is left out
+    private final double diagonals;   // chance a square gets its diagonal
+    private int edges = -1;           // E(), once counted
+
+    public GraphGenerator(int vertices, String type, long seed) {
+        if (vertices < 1) throw new IllegalArgumentException("Need at least one vertex");
+        this.cols = (int) Math.ceil(Math.sqrt(vertices));
+        this.rows = (int) ((vertices + (long) cols - 1) / cols);
+        if ((long) rows * cols > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many vertices for int ids");
+        if ((long) Math.max(rows, cols) * SPACING + 2 * JITTER > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many vertices for int coordinates");
+        this.seed = seed;
+        if (type.equals("grid"))          { drop = 0.10; diagonals = 0.20; }
+        else if (type.equals("delaunay")) { drop = 0.0;  diagonals = 1.0;  }
+        else throw new IllegalArgumentException("Unknown graph type " + type + ", expected grid or delaunay");
+    }
+
+    public int V() { return rows * cols; }
+
+    // number of edges, by one pass over the vertices the first time
+    public int E() {
+        if (edges >= 0) return edges;
+        int[] ends = new int[2];
+        long E = 0;
+        for (int v = 0; v < V(); v++)
+            for (int kind = KIND_RIGHT; kind <= KIND_DIAGONAL; kind++)
+                if (edge(v, kind, ends)) E++;
+        if (2 * E > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Too many edges");
+        return edges = (int) E;
+    }
+
+    public int x(int v) { return (v % cols) * SPACING + JITTER + jitter(v, JITTER_X); }
+    public int y(int v) { return (v / cols) * SPACING + JITTER + jitter(v, JITTER_Y); }
+
+
+    /*******************************************************************
+     *  Structure, recomputed from hashes
+     *******************************************************************/
+
+    // the edge of the given kind that vertex u lists, if there is one:
+    // its ends go in ends[0] and ends[1]. The diagonal of the square
+    // right of and below u is listed by u even when it runs from u + 1
+    // to u + cols.
+    private boolean edge(int u, int kind, int[] ends) {
+        int i = u / cols, j = u % cols;
+        if (kind == KIND_RIGHT) {
+            if (j + 1 >= cols) return false;
+            if (!treeParentIsLeft(u + 1) && chance(u, RIGHT) < drop) return false;
+            ends[0] = u; ends[1] = u + 1;
+            return true;
+        }
+        if (kind == KIND_DOWN) {
+            if (i + 1 >= rows) return false;
+            if (treeParentIsLeft(u + cols) && chance(u, DOWN) < drop) return false;
+            ends[0] = u; ends[1] = u + cols;
+            return true;
+        }
+        if (i + 1 >= rows || j + 1 >= cols || chance(u, DIAGONAL) >= diagonals) return false;
+        // the shorter diagonal, as a Delaunay flip would choose
+        if (dist2(u, u + cols + 1) <= dist2(u + 1, u + cols)) { ends[0] = u;     ends[1] = u + cols + 1; }
+        else                                                   { ends[0] = u + 1; ends[1] = u + cols;     }
+        return true;
+    }
+
+    // the spanning tree links v to its left neighbor, or to the one above
+    private boolean treeParentIsLeft(int v) {
+        int i = v / cols, j = v % cols;
+        if (i == 0) return true;
+        if (j == 0) return false;
+        return chance(v, PARENT) < 0.5;
+    }
+
+    private long dist2(int v, int w) {
+        long dx = x(v) - x(w), dy = y(v) - y(w);
+        return dx * dx + dy * dy;
+    }
+
+    private int jitter(int v, int salt) {
+        return (int) (chance(v, salt) * (2 * JITTER + 1)) - JITTER;
+    }
+
+    // uniform in [0, 1), fixed by the seed, the vertex and the salt
+    private double chance(int v, int salt) {
+        long z = seed + ((long) v * 8 + salt) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    // the neighbors of v, in the order the text loader builds them: the
+    // edge listed last in the file first. Edges are listed by vertex and
+    // then kind, so 3u + kind orders them. Returns the neighbor count.
+    private int neighbors(int v, int[] out, long[] keys, int[] ends) {
+        int n = 0;
+        int i = v / cols, j = v % cols;
+        // the edges that can touch v: its own, the right edge of its left
+        // neighbor, the down edge of the one above, and the diagonals of
+        // the four squares v is a corner of
+        for (int c = 0; c < 8; c++) {
+            int u, kind;
+            switch (c) {
+                case 0:  u = v;            kind = KIND_RIGHT;    break;
+                case 1:  u = v;            kind = KIND_DOWN;     break;
+                case 2:  u = v;            kind = KIND_DIAGONAL; break;
+                case 3:  u = v - 1;        kind = KIND_RIGHT;    break;
+                case 4:  u = v - 1;        kind = KIND_DIAGONAL; break;
+                case 5:  u = v - cols;     kind = KIND_DOWN;     break;
+                case 6:  u = v - cols;     kind = KIND_DIAGONAL; break;
+                default: u = v - cols - 1; kind = KIND_DIAGONAL; break;
+            }
+            if ((c == 3 || c == 4 || c == 7) && j == 0) continue;
+            if (c >= 5 && i == 0) continue;
+            if (!edge(u, kind, ends)) continue;
+            int w;
+            if      (ends[0] == v) w = ends[1];
+            else if (ends[1] == v) w = ends[0];
+            else continue;
+            // insertion sort by key, descending
+            long key = edgeKey(u, kind);
+            int k = n++;
+            for (; k > 0 && keys[k - 1] < key; k--) { keys[k] = keys[k - 1]; out[k] = out[k - 1]; }
+            keys[k] = key;
+            out[k] = w;
+        }
+        return n;
+    }
+
+    private static long edgeKey(int v, int kind) { return 3L * v + kind; }
+
+
+    /*******************************************************************
+     *  Output
+     *******************************************************************/
+
+    // the graph in the text format
+    public void writeText(String name) {
+        int V = V(), E = E();
+        int[] ends = new int[2];
+        try (GraphFile.Sink out = new GraphFile.Sink(name)) {
+            out.number(V); out.space(); out.number(E); out.newline();
+            for (int v = 0; v < V; v++) {
+                out.number(v); out.space(); out.number(x(v)); out.space(); out.number(y(v)); out.newline();
+            }
+            for (int v = 0; v < V; v++) {
+                for (int kind = KIND_RIGHT; kind <= KIND_DIAGONAL; kind++) {
+                    if (!edge(v, kind, ends)) continue;
+                    out.number(ends[0]); out.space(); out.number(ends[1]); out.newline();
+                }
+            }
+        }
+    }
+
+    // the graph in GraphFile's binary format, one section at a time
+    public void writeBinary(String name, int kind) {
+        int V = V(), E = E();
+        int[] out = new int[8], ends = new int[2];
+        long[] keys = new long[8];
+        try (GraphFile.Sink sink = new GraphFile.Sink(name)) {
+            sink.putInt(GraphFile.MAGIC).putInt(GraphFile.VERSION).putInt(V).putInt(E).putInt(kind).putInt(0);
+            for (int v = 0; v < V; v++) sink.putInt(x(v));
+            for (int v = 0; v < V; v++) sink.putInt(y(v));
+            int offset = 0;
+            for (int v = 0; v < V; v++) {
+                sink.putInt(offset);
+                offset += neighbors(v, out, keys, ends);
+            }
+            sink.putInt(offset);
+            if (offset != 2 * E) throw new IllegalStateException("Neighbor lists disagree with the edge count");
+            for (int v = 0; v < V; v++) {
+                int n = neighbors(v, out, keys, ends);
+                for (int k = 0; k < n; k++) sink.putInt(out[k]);
+            }
+            if (kind == GraphFile.NO_WEIGHTS) return;
+            while (sink.written() < GraphFile.weightStart(V, E)) sink.putInt(0);
+            for (int v = 0; v < V; v++) {
+                int n = neighbors(v, out, keys, ends);
+                for (int k = 0; k < n; k++) {
+                    double dx = x(v) - x(out[k]), dy = y(v) - y(out[k]);
+                    double d = Math.sqrt(dx*dx + dy*dy);
+                    if (kind == GraphFile.FLOAT_WEIGHTS) sink.putFloat(EuclideanGraph.roundUp(d));
+                    else                                 sink.putDouble(d);
+                }
+            }
+        }
+    }
+
+    // count query pairs; near ones are at most NEAR rows and columns apart
+    public void writeQueries(String name, int count, boolean near, long seed) {
+        java.util.Random random = new java.util.Random(seed);
+        int V = V();
+        try (GraphFile.Sink out = new GraphFile.Sink(name)) {
+            for (int q = 0; q < count; q++) {
+                int s = random.nextInt(V);
+                int d;
+                if (near) {
+                    int i = clamp(s / cols + random.nextInt(2 * NEAR + 1) - NEAR, rows);
+                    int j = clamp(s % cols + random.nextInt(2 * NEAR + 1) - NEAR, cols);
+                    d = i * cols + j;
+                }
+                else d = random.nextInt(V);
+                out.number(s); out.space(); out.number(d); out.newline();
+            }
+        }
+    }
+
+    private static int clamp(int i, int n) { return (i < 0) ? 0 : (i >= n) ? n - 1 : i; }
+
+
+    // command line: the graph, then any query files
+    public static void main(String[] args) {
+        int vertices = Integer.parseInt(args[0]);
+        String name = args[1];
+        String type = "grid";
+        long seed = 20240601L;
+        int kind = -1;                      // text
+        for (int i = 2; i < args.length; i++) {
+            if      (args[i].equals("-type"))      type = args[++i];
+            else if (args[i].equals("-seed"))      seed = Long.parseLong(args[++i]);
+            else if (args[i].equals("-binary"))    kind = GraphFile.DOUBLE_WEIGHTS;
+            else if (args[i].equals("-float"))     kind = GraphFile.FLOAT_WEIGHTS;
+            else if (args[i].equals("-noweights")) kind = GraphFile.NO_WEIGHTS;
+        }
+
+        GraphGenerator generator = new GraphGenerator(vertices, type, seed);
+        long start = System.nanoTime();
+        if (kind < 0) generator.writeText(name);
+        else          generator.writeBinary(name, kind);
+        long end = System.nanoTime();
+        System.err.printf("%s: %d x %d %s graph, %d vertices, %d edges, in %.1f s%n",
+                          name, generator.rows, generator.cols, type, generator.V(), generator.E(), (end - start) / 1e9);
+
+        for (int i = 2; i < args.length; i++) {
+            if (!args[i].equals("-short") && !args[i].equals("-long")) continue;
+            String file = args[i + 1];
+            int count = Integer.parseInt(args[i + 2]);
+            generator.writeQueries(file, count, args[i].equals("-short"), seed + i);
+            System.err.printf("%s: %d %s queries%n", file, count, args[i].substring(1));
+        }
+    }
+}
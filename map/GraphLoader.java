@@ -0,0 +1,440 @@
+/*************************************************************************
+ *  Compilation:  javac GraphLoader.java
+ *  Execution:    java GraphLoader graph-file [threads] [-float] [-order hilbert|bfs]
+ *                                 [-index] [-check]
+ *  Dependencies: EuclideanGraph.java GraphFile.java IntScanner.java
+ *                Renumbering.java SpatialIndex.java
+ *
+ *  Loads a graph in timed stages on a fork-join pool, so cold start
+ *  scales with the number of cores instead of running one parser and
+ *  then every preprocessing pass one after the other.
+ *
+ *  The text format is loaded in these stages:
+ *
+ *      scan       split the file into chunks at whitespace, each mapped
+ *                 on its own, and count the ints that start in each
+ *      parse      parse every chunk; the counts say at which int of the
+ *                 file a chunk starts, so each one knows where its
+ *                 vertex records and edge ends go
+ *      vertices   place the coordinates by vertex id and reject
+ *                 duplicate or out-of-range ids
+ *      degrees    count the degree of each vertex with atomic adds
+ *      offsets    prefix sums of the degrees, by blocks
+ *      fill       claim a slot per edge end with an atomic cursor
+ *      order      sort each neighbor list by edge number, last edge
+ *                 first, so the result does not depend on which thread
+ *                 claimed which slot and equals the serial loader's
+ *      weights    edge lengths, by ranges of vertices
+ *
+ *  A binary graph file is one bulk copy, timed as the stage "binary".
+ *  After loading, stage() runs any precomputation on the same pool and
+ *  times it: Arrays.parallelSort and the like, called from inside a
+ *  stage, split their work over the pool rather than the common one.
+ *
+ *  Chunks are mapped one by one, so text files over 2 GB load too.
+ *  GraphFile.read() loads text through here only when asked for more
+ *  than one thread, e.g. with -Dgraph.threads=8.
+ *
+ *  % java GraphLoader usa.txt 8 -order hilbert -index -check
+ *
+ *************************************************************************/
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class GraphLoader implements AutoCloseable {
+    private static final long CHUNK_SIZE = 16L << 20;   // bytes per parse chunk, at most
+    private static final int GRAIN = 1 << 14;           // items per leaf task
+
+    private final ForkJoinPool pool;
+    private final List<String> stageNames = new ArrayList<String>();
+    private final List<Long> stageNanos = new ArrayList<Long>();
+
+    // a range of indices to process on one thread
+    private interface Range {
+        void run(int lo, int hi);
+    }
+
+    public GraphLoader(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+        pool = new ForkJoinPool(threads);
+    }
+
+    // load a graph file in either format on threads threads
+    public static EuclideanGraph read(String name, boolean floatWeights, int threads) {
+        try (GraphLoader loader = new GraphLoader(threads)) {
+            return loader.load(name, floatWeights);
+        }
+    }
+
+    public EuclideanGraph load(String name, boolean floatWeights) {
+        if (GraphFile.isBinary(name)) {
+            final String file = name;
+            final boolean useFloat = floatWeights;
+            return stage("binary", new Callable<EuclideanGraph>() {
+                public EuclideanGraph call() { return GraphFile.readBinary(file, useFloat); }
+            });
+        }
+        try (RandomAccessFile file = new RandomAccessFile(name, "r");
+             FileChannel channel = file.getChannel()) {
+            return loadText(channel, floatWeights);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not read " + name, e);
+        }
+    }
+
+    // run work on the pool as a timed stage and return its result
+    public <T> T stage(String name, Callable<T> work) {
+        long start = System.nanoTime();
+        try {
+            return pool.submit(work).get();
+        }
+        catch (InterruptedException e) { throw new RuntimeException(e); }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+        finally { record(name, start); }
+    }
+
+    public int threads() { return pool.getParallelism(); }
+
+    // one line per stage so far, with its time, and the total
+    public String report() {
+        StringBuilder s = new StringBuilder();
+        long total = 0;
+        for (int i = 0; i < stageNames.size(); i++) {
+            total += stageNanos.get(i);
+            s.append(String.format("  %-14s %9.1f ms%n", stageNames.get(i), stageNanos.get(i) / 1e6));
+        }
+        s.append(String.format("  %-14s %9.1f ms on %d threads%n", "total", total / 1e6, threads()));
+        return s.toString();
+    }
+
+    public void close() { pool.shutdown(); }
+
+
+    /*******************************************************************
+     *  Text format
+     *******************************************************************/
+
+    private EuclideanGraph loadText(FileChannel channel, final boolean floatWeights) throws IOException {
+        long start = System.nanoTime();
+        final MappedByteBuffer[] chunks = chunks(channel);
+        final long[] counts = new long[chunks.length + 1];
+        parallel(chunks.length, 1, new Range() {
+            public void run(int lo, int hi) {
+                for (int c = lo; c < hi; c++) counts[c + 1] = countInts(chunks[c]);
+            }
+        });
+        for (int c = 0; c < chunks.length; c++) counts[c + 1] += counts[c];
+        record("scan", start);
+
+        start = System.nanoTime();
+        IntScanner header = new IntScanner(Channels.newInputStream(channel.position(0)));
+        final int V = header.nextInt();
+        final int E = header.nextInt();
+        if (V < 0 || E < 0 || 3L * V > Integer.MAX_VALUE - 8 || 2L * E > Integer.MAX_VALUE - 8) throw new RuntimeException("Illegal graph size");
+        final long needed = 2 + 3L * V + 2L * E;
+        if (counts[chunks.length] < needed) throw new RuntimeException("No more ints to read");
+        final int[] records = new int[3 * V];    // id x y of each vertex line
+        final int[] ends = new int[2 * E];       // from to of each edge line
+        parallel(chunks.length, 1, new Range() {
+            public void run(int lo, int hi) {
+                for (int c = lo; c < hi; c++) parse(chunks[c], counts[c], counts[c + 1], needed, records, ends);
+            }
+        });
+        record("parse", start);
+
+        start = System.nanoTime();
+        final int[] xs = new int[V];
+        final int[] ys = new int[V];
+        final int[] owner = new int[V];
+        parallel(V, GRAIN, new Range() {
+            public void run(int lo, int hi) {
+                for (int i = lo; i < hi; i++) {
+                    int v = records[3 * i];
+                    if (v < 0 || v >= V) throw new RuntimeException("Illegal vertex number");
+                    xs[v] = records[3 * i + 1];
+                    ys[v] = records[3 * i + 2];
+                    owner[v] = i;
+                }
+            }
+        });
+        // V records with distinct ids cover every vertex once
+        parallel(V, GRAIN, new Range() {
+            public void run(int lo, int hi) {
+                for (int i = lo; i < hi; i++)
+                    if (owner[records[3 * i]] != i) throw new RuntimeException("Duplicate vertex number " + records[3 * i]);
+            }
+        });
+        record("vertices", start);
+
+        start = System.nanoTime();
+        final AtomicIntegerArray cursor = new AtomicIntegerArray(V);
+        parallel(E, GRAIN, new Range() {
+            public void run(int lo, int hi) {
+                for (int i = lo; i < hi; i++) {
+                    int v = ends[2 * i], w = ends[2 * i + 1];
+                    if (v < 0 || v >= V) throw new RuntimeException("Illegal vertex number");
+                    if (w < 0 || w >= V) throw new RuntimeException("Illegal vertex number");
+                    cursor.getAndIncrement(v);
+                    cursor.getAndIncrement(w);
+                }
+            }
+        });
+        record("degrees", start);
+
+        start = System.nanoTime();
+        final int[] offsets = prefixSums(cursor, V);
+        parallel(V, GRAIN, new Range() {
+            public void run(int lo, int hi) {
+                for (int v = lo; v < hi; v++) cursor.set(v, offsets[v]);
+            }
+        });
+        record("offsets", start);
+
+        start = System.nanoTime();
+        final int[] slotEdge = new int[2 * E];   // edge line of each slot
+        parallel(E, GRAIN, new Range() {
+            public void run(int lo, int hi) {
+                for (int i = lo; i < hi; i++) {
+                    slotEdge[cursor.getAndIncrement(ends[2 * i])] = i;
+                    slotEdge[cursor.getAndIncrement(ends[2 * i + 1])] = i;
+                }
+            }
+        });
+        record("fill", start);
+
+        start = System.nanoTime();
+        final int[] targets = new int[2 * E];
+        parallel(V, GRAIN, new Range() {
+            public void run(int lo, int hi) {
+                for (int v = lo; v < hi; v++) {
+                    int begin = offsets[v], end = offsets[v + 1];
+                    // insertion sort, descending; degrees are small
+                    for (int a = begin + 1; a < end; a++) {
+                        int edge = slotEdge[a];
+                        int b = a;
+                        for (; b > begin && slotEdge[b - 1] < edge; b--) slotEdge[b] = slotEdge[b - 1];
+                        slotEdge[b] = edge;
+                    }
+                    for (int e = begin; e < end; e++) {
+                        int i = slotEdge[e];
+                        targets[e] = (ends[2 * i] == v) ? ends[2 * i + 1] : ends[2 * i];
+                    }
+                }
+            }
+        });
+        record("order", start);
+
+        start = System.nanoTime();
+        final double[] weights = floatWeights ? null : new double[2 * E];
+        final float[] fweights = floatWeights ? new float[2 * E] : null;
+        parallel(V, GRAIN, new Range() {
+            public void run(int lo, int hi) {
+                for (int v = lo; v < hi; v++) {
+                    for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                        double dx = xs[v] - xs[targets[e]];
+                        double dy = ys[v] - ys[targets[e]];
+                        double d = Math.sqrt(dx*dx + dy*dy);
+                        if (floatWeights) fweights[e] = EuclideanGraph.roundUp(d);
+                        else              weights[e]  = d;
+                    }
+                }
+            }
+        });
+        EuclideanGraph G = new EuclideanGraph(xs, ys, offsets, targets, weights, fweights, floatWeights);
+        record("weights", start);
+        return G;
+    }
+
+    // map the file in chunks of at most CHUNK_SIZE bytes that each end
+    // on whitespace (or at the end of the file), so no int is split
+    private MappedByteBuffer[] chunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long wanted = Math.max(4L * threads(), (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        long step = Math.max(1, (size + wanted - 1) / wanted);
+        List<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+        ByteBuffer probe = ByteBuffer.allocate(256);
+        long begin = 0;
+        while (begin < size) {
+            long end = Math.min(size, begin + step);
+            // move the cut past the rest of the int it landed in
+            while (end < size) {
+                probe.clear();
+                int n = channel.read(probe, end);
+                if (n <= 0) { end = size; break; }
+                int i = 0;
+                while (i < n && probe.get(i) > ' ') i++;
+                end += i;
+                if (i < n) break;
+            }
+            chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, begin, end - begin));
+            begin = end;
+        }
+        return chunks.toArray(new MappedByteBuffer[0]);
+    }
+
+    // number of ints in a chunk: bytes above ' ' that follow whitespace
+    private static long countInts(ByteBuffer chunk) {
+        long count = 0;
+        boolean inToken = false;
+        for (int i = 0, n = chunk.limit(); i < n; i++) {
+            boolean token = chunk.get(i) > ' ';
+            if (token && !inToken) count++;
+            inToken = token;
+        }
+        return count;
+    }
+
+    // parse a chunk holding ints first .. last-1 of the file
+    private static void parse(ByteBuffer chunk, long first, long last, long needed, int[] records, int[] ends) {
+        IntScanner in = new IntScanner(chunk.duplicate());
+        long k = first;
+        long end = Math.min(last, needed);
+        long vertexEnd = Math.min(end, 2L + records.length);
+        for (; k < Math.min(end, 2); k++) in.nextInt();                          // V and E
+        for (int i = (int) (k - 2); k < vertexEnd; k++, i++) records[i] = in.nextInt();
+        for (int i = (int) (k - 2 - records.length); k < end; k++, i++) ends[i] = in.nextInt();
+    }
+
+    // offsets from the degrees, summed by blocks in parallel
+    private int[] prefixSums(final AtomicIntegerArray degree, final int V) {
+        final int[] offsets = new int[V + 1];
+        final int blocks = (V + GRAIN - 1) / GRAIN;
+        final long[] blockStart = new long[blocks + 1];
+        parallel(blocks, 1, new Range() {
+            public void run(int lo, int hi) {
+                for (int b = lo; b < hi; b++) {
+                    long sum = 0;
+                    for (int v = b * GRAIN, end = Math.min(V, v + GRAIN); v < end; v++) sum += degree.get(v);
+                    blockStart[b + 1] = sum;
+                }
+            }
+        });
+        for (int b = 0; b < blocks; b++) blockStart[b + 1] += blockStart[b];
+        if (blockStart[blocks] > Integer.MAX_VALUE) throw new RuntimeException("Too many edges");
+        parallel(blocks, 1, new Range() {
+            public void run(int lo, int hi) {
+                for (int b = lo; b < hi; b++) {
+                    int sum = (int) blockStart[b];
+                    for (int v = b * GRAIN, end = Math.min(V, v + GRAIN); v < end; v++) {
+                        offsets[v] = sum;
+                        sum += degree.get(v);
+                    }
+                }
+            }
+        });
+        offsets[V] = (int) blockStart[blocks];
+        return offsets;
+    }
+
+
+    /*******************************************************************
+     *  Fork-join helpers
+     *******************************************************************/
+
+    // run body over 0..n-1, split in halves down to grain items per task
+    private void parallel(int n, int grain, Range body) {
+        if (n <= 0) return;
+        pool.invoke(new Split(body, 0, n, Math.max(1, grain)));
+    }
+
+    private static final class Split extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Range body;
+        private final int lo, hi, grain;
+
+        Split(Range body, int lo, int hi, int grain) {
+            this.body = body;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+        }
+
+        protected void compute() {
+            if (hi - lo <= grain) {
+                body.run(lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new Split(body, lo, mid, grain), new Split(body, mid, hi, grain));
+        }
+    }
+
+    private void record(String name, long start) {
+        stageNames.add(name);
+        stageNanos.add(System.nanoTime() - start);
+    }
+
+
+    // test client: staged load with timings, optional precomputation,
+    // and with -check a comparison against the serial loader
+    public static void main(String[] args) {
+        String name = args[0];
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean floatWeights = false, index = false, check = false;
+        String order = null;
+        for (int i = 1; i < args.length; i++) {
+            if      (args[i].equals("-float"))  floatWeights = true;
+            else if (args[i].equals("-index"))  index = true;
+            else if (args[i].equals("-check"))  check = true;
+            else if (args[i].equals("-order"))  order = args[++i];
+            else threads = Integer.parseInt(args[i]);
+        }
+
+        try (GraphLoader loader = new GraphLoader(threads)) {
+            final EuclideanGraph G = loader.load(name, floatWeights);
+            if (order != null) {
+                final String kind = order;
+                loader.stage("renumber", new Callable<Renumbering>() {
+                    public Renumbering call() { return Renumbering.of(kind, G); }
+                });
+            }
+            if (index) {
+                loader.stage("spatial index", new Callable<SpatialIndex>() {
+                    public SpatialIndex call() { return new SpatialIndex(G); }
+                });
+            }
+            System.err.printf("%s: %d vertices, %d edges%n", name, G.V(), G.E());
+            System.err.print(loader.report());
+
+            if (check) {
+                long start = System.nanoTime();
+                EuclideanGraph serial = GraphFile.isBinary(name)
+                                      ? GraphFile.readBinary(name, floatWeights)
+                                      : new EuclideanGraph(IntScanner.open(name), floatWeights);
+                long end = System.nanoTime();
+                System.err.printf("  %-14s %9.1f ms%n", "serial load", (end - start) / 1e6);
+                if (!same(G, serial)) throw new RuntimeException("Parallel and serial loads differ");
+                System.err.println("Same graph as the serial loader");
+            }
+        }
+    }
+
+    // identical coordinates, neighbor lists in the same order, and weights
+    private static boolean same(EuclideanGraph a, EuclideanGraph b) {
+        if (a.V() != b.V() || a.E() != b.E()) return false;
+        for (int v = 0; v < a.V(); v++) {
+            if (a.x(v) != b.x(v) || a.y(v) != b.y(v)) return false;
+            if (a.begin(v) != b.begin(v) || a.end(v) != b.end(v)) return false;
+            for (int e = a.begin(v); e < a.end(v); e++)
+                if (a.target(e) != b.target(e) || a.weight(e) != b.weight(e)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,115 @@
+/*************************************************************************
+ *  Compilation:  javac Histogram.java
+ *  Execution:    java Histogram
+ *
+ *  Log-linear histogram of non-negative longs (latencies in ns), in the
+ *  style of HdrHistogram: values below 128 get a bucket each, larger
+ *  values keep their top 7 bits, so every bucket spans under 1/64 of
+ *  its value and percentiles are exact to about 1.6%. 3712 buckets
+ *  cover the whole range of a long in a fixed 29 KB, and recording a
+ *  value is a shift, a subtraction and an increment.
+ *
+ *  Methods are synchronized: the owner records from one thread while
+ *  others take snapshots; the lock is never contended in between.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+
+public class Histogram {
+    private static final int SUB_BITS = 6;                    // 64 buckets per power of 2
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int LINEAR = 2 * SUB_COUNT;          // 0..127 exact
+    private static final int BUCKETS = LINEAR + (62 - SUB_BITS) * SUB_COUNT;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+    private long sum;
+    private long max;
+
+    public synchronized void record(long value) {
+        if (value < 0) value = 0;
+        counts[bucket(value)]++;
+        total++;
+        sum += value;
+        if (value > max) max = value;
+    }
+
+    // add every value recorded in that to this
+    public void add(Histogram that) {
+        long[] c;
+        long n, s, m;
+        synchronized (that) {
+            c = that.counts.clone();
+            n = that.total; s = that.sum; m = that.max;
+        }
+        synchronized (this) {
+            for (int i = 0; i < BUCKETS; i++) counts[i] += c[i];
+            total += n;
+            sum += s;
+            if (m > max) max = m;
+        }
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        total = sum = max = 0;
+    }
+
+    public synchronized long count() { return total; }
+    public synchronized long max()   { return max;   }
+
+    public synchronized double mean() {
+        return (total == 0) ? 0.0 : (double) sum / total;
+    }
+
+    // smallest recorded value v (to bucket precision) such that p percent
+    // of the values are <= v; 0 if empty
+    public synchronized long percentile(double p) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(highest(i), max);
+        }
+        return max;
+    }
+
+    // estimate memory usage
+    public long memoryBytes() {
+        return (long) BUCKETS * Long.BYTES;
+    }
+
+
+    // bucket of value: exact below LINEAR, else exponent and top bits
+    private static int bucket(long value) {
+        if (value < LINEAR) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift);                   // SUB_COUNT .. 2*SUB_COUNT-1
+        return LINEAR + (shift - 1) * SUB_COUNT + (sub - SUB_COUNT);
+    }
+
+    // largest value that falls in bucket i
+    private static long highest(int i) {
+        if (i < LINEAR) return i;
+        int shift = (i - LINEAR) / SUB_COUNT + 1;
+        long sub = SUB_COUNT + (i - LINEAR) % SUB_COUNT;
+        return ((sub + 1) << shift) - 1;     // wraps to Long.MAX_VALUE at the top
+    }
+
+
+    // test client: percentiles of known distributions
+    public static void main(String[] args) {
+        Histogram h = new Histogram();
+        for (long v = 1; v <= 1000000; v++) h.record(v);
+        System.out.printf("uniform 1..1e6: p50 %d, p99 %d, p99.9 %d, max %d, mean %.1f%n",
+                          h.percentile(50), h.percentile(99), h.percentile(99.9), h.max(), h.mean());
+        for (long v = 1; v > 0; v *= 3) {
+            if (bucket(v) >= BUCKETS || highest(bucket(v)) < v)
+                throw new RuntimeException("Bad bucket for " + v);
+        }
+        if (bucket(Long.MAX_VALUE) != BUCKETS - 1) throw new RuntimeException("Bad top bucket");
+        System.out.println(BUCKETS + " buckets, " + h.memoryBytes() + " bytes");
+    }
+}
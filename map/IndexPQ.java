@@ -1,5 +1,5 @@
 /*********************************************************************
- *  Indirect priority queue.
+ *  Indirect priority queue, as a d-ary heap (d = 4 by default).
  *
  *  The priority queue maintains its own copy of the priorities,
  *  unlike the one in Algorithms in Java.
@@ -10,31 +10,77 @@
 
  *********************************************************************/
 
- public class IndexPQ {
+ public class IndexPQ implements MinPQ {
+    private final int d;        // children per heap node
     private int N;              // number of elements on PQ
     private int[] pq;           // heap, 1-based: pq[1] is min
     private int[] qp;           // inverse: qp[pq[i]] = i
     private double[] priority;  // priority[k] = value for key k
 
 
-    //tracking metrics
-    public static int insertCount = 0;
-    public static int changeCount = 0;
-    public static int delMinCount = 0;
-    public static int maxPQSize = 0;
+    //tracking metrics, per queue so concurrent searches don't share them
+    private int insertCount = 0;
+    private int changeCount = 0;
+    private int delMinCount = 0;
+    private int maxPQSize = 0;
 
 
     public IndexPQ(int maxN) {
+        this(maxN, 4);
+    }
+
+    public IndexPQ(int maxN, int d) {
+        if (d < 2) throw new IllegalArgumentException("Heap arity must be at least 2");
+        this.d = d;
         pq = new int[maxN + 1];
         qp = new int[maxN + 1];
         priority = new double[maxN + 1];
         N = 0;
     }
 
+    // builds d-ary heaps
+    public static MinPQ.Factory factory(final int d) {
+        if (d < 2) throw new IllegalArgumentException("Heap arity must be at least 2");
+        return new MinPQ.Factory() {
+            public MinPQ create(int maxN) { return new IndexPQ(maxN, d); }
+            public String name() { return d + "-ary"; }
+        };
+    }
+
     public boolean isEmpty() { return N == 0; }
 
+    // remove every key in O(1), keeping the capacity for the next query;
+    // stale qp[] entries are harmless since contains() checks pq[] too
+    public void clear() {
+        N = 0;
+        insertCount = 0;
+        changeCount = 0;
+        delMinCount = 0;
+        maxPQSize = 0;
+    }
+
+    // metrics since construction or the last clear()
+    public int insertCount() { return insertCount; }
+    public int changeCount() { return changeCount; }
+    public int delMinCount() { return delMinCount; }
+    public int maxSize()     { return maxPQSize;   }
+
+    public long memoryBytes() {
+        return (long) pq.length * (2 * Integer.BYTES + Double.BYTES);
+    }
+
+    // is key k currently on the PQ?
+    public boolean contains(int k) {
+        int i = qp[k];
+        return i >= 1 && i <= N && pq[i] == k;
+    }
+
+    // priority of the smallest key, without removing it
+    public double minPriority() { return priority[pq[1]]; }
+
     // insert key k with given priority
     public void insert(int k, double val) {
+        insertCount++;
         N++;
         qp[k] = N;
         pq[N] = k;
@@ -77,7 +123,7 @@
     // move item at k up until heap-order restored (used after insertion)
     private void fixUp(int k) {
         while (k > 1) {
-            int parent = (k + 2) / 4;    
+            int parent = (k - 2) / d + 1;
             if (!greater(parent, k)) break;
             exch(parent, k);
             k = parent;
@@ -87,11 +133,11 @@
     // move item at k down until heap-order restored(used after removnig the min)
     private void fixDown(int k) {
         while (true) {
-            int firstChild = 4 * (k - 1) + 2;  // index of first of up to 4 children
+            int firstChild = d * (k - 1) + 2;  // index of first of up to d children
             if (firstChild > N) break;
-            // find smallest among up to 4 children
+            // find smallest among up to d children
             int best = firstChild;
-            for (int offset = 1; offset < 4; offset++) {
+            for (int offset = 1; offset < d; offset++) {
                 int idx = firstChild + offset;
                 if (idx <= N && greater(best, idx)) {
                     best = idx;
@@ -0,0 +1,149 @@
+/*************************************************************************
+ *  Compilation:  javac IntScanner.java
+ *  Execution:    java IntScanner file
+ *  Dependencies: IntIterator.java In.java
+ *
+ *  Reads whitespace-separated ints straight from bytes, for the graph
+ *  and query files, which hold nothing else.
+ *
+ *  In and StdIn go through a BufferedReader and build a String for
+ *  every token before Integer.parseInt sees it. IntScanner parses the
+ *  digits directly out of a ByteBuffer: a memory-mapped view of the
+ *  whole file, or one reused 64 KB buffer refilled from a stream. After
+ *  construction it allocates nothing.
+ *
+ *  The test client times In against IntScanner on the same file.
+ *
+ *  % java IntScanner usa.txt
+ *
+ *************************************************************************/
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class IntScanner implements IntIterator {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;   // refill source, or null for a mapped file
+    private final byte[] bytes;     // backing array of buf when reading a stream
+    private ByteBuffer buf;
+
+    // read from a stream, such as System.in
+    public IntScanner(InputStream in) {
+        this.in = in;
+        this.bytes = new byte[BUFFER_SIZE];
+        this.buf = ByteBuffer.wrap(bytes, 0, 0);
+    }
+
+    // read from bytes already in memory
+    public IntScanner(ByteBuffer buf) {
+        this.in = null;
+        this.bytes = null;
+        this.buf = buf;
+    }
+
+    // memory-map the named file, or stream it if it is too large to map
+    public static IntScanner open(String name) {
+        try (RandomAccessFile file = new RandomAccessFile(name, "r");
+             FileChannel channel = file.getChannel()) {
+            long size = channel.size();
+            if (size <= Integer.MAX_VALUE)
+                return new IntScanner(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not open " + name, e);
+        }
+        try { return new IntScanner(new FileInputStream(name)); }
+        catch (IOException e) { throw new RuntimeException("Could not open " + name, e); }
+    }
+
+
+    // is there another token? skips whitespace
+    public boolean hasNext() {
+        while (true) {
+            if (!buf.hasRemaining() && !fill()) return false;
+            if (buf.get(buf.position()) > ' ') return true;
+            buf.get();
+        }
+    }
+
+    public boolean isEmpty() { return !hasNext(); }
+
+    public int next() { return nextInt(); }
+
+    // parse the next token as an int
+    public int nextInt() {
+        if (!hasNext()) throw new RuntimeException("No more ints to read");
+        boolean negative = false;
+        if (buf.get(buf.position()) == '-') {
+            negative = true;
+            buf.get();
+        }
+        long n = 0;
+        int digits = 0;
+        while (buf.hasRemaining() || fill()) {
+            int c = buf.get(buf.position());
+            if (c <= ' ') break;
+            if (c < '0' || c > '9') throw new RuntimeException("Not an int: unexpected '" + (char) c + "'");
+            n = 10 * n + (c - '0');
+            if (n > Integer.MAX_VALUE + 1L) throw new RuntimeException("Int out of range");
+            digits++;
+            buf.get();
+        }
+        if (digits == 0) throw new RuntimeException("Not an int: lone '-'");
+        if (negative) n = -n;
+        if (n > Integer.MAX_VALUE) throw new RuntimeException("Int out of range");
+        return (int) n;
+    }
+
+    // refill the stream buffer; false at end of input
+    private boolean fill() {
+        if (in == null) return false;
+        try {
+            int n;
+            do { n = in.read(bytes, 0, bytes.length); } while (n == 0);
+            if (n < 0) return false;
+            buf.clear();
+            buf.limit(n);
+            return true;
+        }
+        catch (IOException e) { throw new RuntimeException(e); }
+    }
+
+
+    // test client: time In against IntScanner on the same file
+    public static void main(String[] args) {
+        String name = args[0];
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            In in = new In(name);
+            long sumIn = 0;
+            int countIn = 0;
+            String token;
+            while ((token = in.readString()) != null) {
+                sumIn += Integer.parseInt(token);
+                countIn++;
+            }
+            long inTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            IntScanner scanner = IntScanner.open(name);
+            long sum = 0;
+            int count = 0;
+            while (scanner.hasNext()) {
+                sum += scanner.nextInt();
+                count++;
+            }
+            long scanTime = System.nanoTime() - start;
+
+            if (sum != sumIn || count != countIn)
+                throw new RuntimeException("IntScanner disagrees with In");
+            System.err.printf("%d ints: In %.1f ms, IntScanner %.1f ms%n",
+                              count, inTime / 1e6, scanTime / 1e6);
+        }
+    }
+}
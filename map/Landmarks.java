@@ -0,0 +1,230 @@
+/*************************************************************************
+ *  Compilation:  javac Landmarks.java
+ *  Execution:    java Landmarks file k [farthest|avoid] < input.txt
+ *  Dependencies: EuclideanGraph.java Dijkstra.java In.java StdIn.java
+ *
+ *  Landmark lower bounds for A*, the "ALT" heuristic (A*, landmarks,
+ *  triangle inequality).
+ *
+ *  For a landmark L the triangle inequality gives
+ *
+ *      dist(v, t) >= | dist(L, t) - dist(L, v) |
+ *
+ *  so once the distance from every landmark to every vertex is known,
+ *  the best of these bounds is a lower bound on the remaining distance
+ *  that is usually much tighter than the straight line.
+ *
+ *  Landmarks are chosen either by "farthest" selection (each new one
+ *  is the vertex farthest from those already picked) or by "avoid"
+ *  selection (grow a shortest path tree from a random root and descend
+ *  into the subtree where the current bounds are worst). Each landmark
+ *  costs one full Dijkstra run.
+ *
+ *  Distances are kept as floats, vertex-major, so the k bounds for a
+ *  vertex sit in one cache line or two.
+ *
+ *  % java Landmarks usa.txt 16 avoid < usa-1000long.txt
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class Landmarks {
+    private static final long SEED = 20240601L;
+
+    private final int V;              // number of vertices
+    private final int k;              // number of landmarks
+    private final int[] landmarks;    // the chosen landmark vertices
+    private final float[] dist;       // dist[v*k + i] = distance from landmark i to v
+    private double slack;             // float rounding allowance, keeps bounds admissible
+
+    private Landmarks(EuclideanGraph G, int k, boolean avoid) {
+        if (k < 1) throw new IllegalArgumentException("Need at least one landmark");
+        this.V = G.V();
+        this.k = k;
+        landmarks = new int[k];
+        if ((long) V * k > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Landmark table too large: " + V + " vertices x " + k
+                                               + " landmarks exceeds the largest array; use fewer landmarks");
+        dist = new float[V * k];
+
+        Dijkstra dijkstra = new Dijkstra(G);
+        Random random = new Random(SEED);
+        if (avoid) selectAvoid(G, dijkstra, random);
+        else       selectFarthest(dijkstra, random);
+    }
+
+    // each new landmark is the reachable vertex farthest from all chosen so far
+    public static Landmarks farthest(EuclideanGraph G, int k) {
+        return new Landmarks(G, k, false);
+    }
+
+    // each new landmark is picked in the region the current bounds cover worst
+    public static Landmarks avoid(EuclideanGraph G, int k) {
+        return new Landmarks(G, k, true);
+    }
+
+    // accessor methods
+    public int count()          { return k;            }
+    public int landmark(int i)  { return landmarks[i]; }
+    public int memoryBytes()    { return dist.length * Float.BYTES; }
+
+
+    // lower bound on the distance from v to t
+    public double lowerBound(int v, int t) {
+        int bv = v * k;
+        int bt = t * k;
+        double best = 0.0;
+        for (int i = 0; i < k; i++) {
+            float a = dist[bt + i];
+            float b = dist[bv + i];
+            // a landmark in another component says nothing
+            if (a == Float.POSITIVE_INFINITY || b == Float.POSITIVE_INFINITY) continue;
+            double d = Math.abs((double) a - b);
+            if (d > best) best = d;
+        }
+        return Math.max(0.0, best - slack);
+    }
+
+
+    private void selectFarthest(Dijkstra dijkstra, Random random) {
+        double[] row = new double[V];
+        double[] minDist = new double[V];
+
+        // start from the vertex farthest from a random one
+        dijkstra.shortestPathTree(random.nextInt(V), minDist, null);
+
+        for (int i = 0; i < k; i++) {
+            int pick = 0;
+            for (int v = 1; v < V; v++)
+                if (finite(minDist[v]) && (!finite(minDist[pick]) || minDist[v] > minDist[pick]))
+                    pick = v;
+            addLandmark(i, pick, dijkstra, row);
+            for (int v = 0; v < V; v++)
+                minDist[v] = Math.min(minDist[v], row[v]);
+        }
+    }
+
+    private void selectAvoid(EuclideanGraph G, Dijkstra dijkstra, Random random) {
+        double[] row = new double[V];
+        int[] pred = new int[V];
+        double[] size = new double[V];
+        boolean[] covered = new boolean[V];   // subtree contains a landmark
+        boolean[] isLandmark = new boolean[V];
+        int[] order = new int[V];
+        int[] childStart = new int[V + 1];
+        int[] children = new int[V];
+
+        for (int i = 0; i < k; i++) {
+            int root = random.nextInt(V);
+            dijkstra.shortestPathTree(root, row, pred);
+
+            // children of each vertex in the tree, in CSR form
+            Arrays.fill(childStart, 0);
+            for (int v = 0; v < V; v++)
+                if (v != root && pred[v] != -1) childStart[pred[v] + 1]++;
+            for (int v = 0; v < V; v++)
+                childStart[v + 1] += childStart[v];
+            int[] next = new int[V];
+            System.arraycopy(childStart, 0, next, 0, V);
+            for (int v = 0; v < V; v++)
+                if (v != root && pred[v] != -1) children[next[pred[v]]++] = v;
+
+            // breadth-first order from the root, so parents precede children
+            int n = 0;
+            order[n++] = root;
+            for (int j = 0; j < n; j++)
+                for (int c = childStart[order[j]]; c < childStart[order[j] + 1]; c++)
+                    order[n++] = children[c];
+
+            // size = total amount by which the current bounds underestimate
+            // in the subtree, zeroed for subtrees that already hold a landmark
+            for (int j = n - 1; j >= 0; j--) {
+                int v = order[j];
+                double bound = Math.max(G.distance(root, v), (i == 0) ? 0.0 : lowerBound(root, v));
+                size[v] = row[v] - bound;
+                covered[v] = isLandmark[v];
+                for (int c = childStart[v]; c < childStart[v + 1]; c++) {
+                    int w = children[c];
+                    size[v] += size[w];
+                    covered[v] |= covered[w];
+                }
+                if (covered[v]) size[v] = 0.0;
+            }
+
+            // descend into the largest subtree until reaching a leaf
+            int pick = root;
+            while (childStart[pick] < childStart[pick + 1]) {
+                int best = -1;
+                for (int c = childStart[pick]; c < childStart[pick + 1]; c++)
+                    if (best == -1 || size[children[c]] > size[best]) best = children[c];
+                if (size[best] <= 0.0) break;
+                pick = best;
+            }
+
+            isLandmark[pick] = true;
+            addLandmark(i, pick, dijkstra, row);
+        }
+    }
+
+    // store the distances from landmark i (vertex v) in column i
+    private void addLandmark(int i, int v, Dijkstra dijkstra, double[] row) {
+        landmarks[i] = v;
+        dijkstra.shortestPathTree(v, row, null);
+        double max = 0.0;
+        for (int w = 0; w < V; w++) {
+            if (finite(row[w])) {
+                dist[w * k + i] = (float) row[w];
+                max = Math.max(max, row[w]);
+            }
+            else dist[w * k + i] = Float.POSITIVE_INFINITY;
+        }
+        // both ends of a difference can be off by half a float ulp
+        slack = Math.max(slack, Math.ulp((float) max));
+    }
+
+    private static boolean finite(double d) { return d < Double.MAX_VALUE; }
+
+
+    // test client: compare settled vertices with and without landmarks
+    public static void main(String[] args) {
+        In graphin = new In(args[0]);
+        EuclideanGraph G = new EuclideanGraph(graphin);
+        int k = (args.length > 1) ? Integer.parseInt(args[1]) : 16;
+        boolean avoid = (args.length > 2) && args[2].equals("avoid");
+        System.err.println("Done reading the graph " + args[0]);
+
+        long start = System.currentTimeMillis();
+        Landmarks L = avoid ? Landmarks.avoid(G, k) : Landmarks.farthest(G, k);
+        long end = System.currentTimeMillis();
+        System.err.println("Selected " + k + (avoid ? " avoid" : " farthest")
+                           + " landmarks in " + (end - start) + " ms, "
+                           + L.memoryBytes() + " bytes");
+
+        Dijkstra euclid = new Dijkstra(G);
+        Dijkstra alt = new Dijkstra(G);
+        alt.useLandmarks(L);
+
+        long visitedEuclid = 0, visitedAlt = 0;
+        int qCount = 0;
+        while (!StdIn.isEmpty()) {
+            int s = StdIn.readInt();
+            int d = StdIn.readInt();
+            euclid.enableAStar(d);
+            alt.enableAStar(d);
+            double a = euclid.distance(s, d);
+            double b = alt.distance(s, d);
+            visitedEuclid += euclid.visitedCount();
+            visitedAlt += alt.visitedCount();
+            qCount++;
+            System.out.println(b);
+            if (Math.abs(a - b) > 1e-6)
+                System.err.println("Disagree on " + s + " " + d + ": " + a + " " + b);
+        }
+        if (qCount > 0) {
+            System.err.printf("Avg visited, Euclidean A*: %.1f%n", (double) visitedEuclid / qCount);
+            System.err.printf("Avg visited, ALT         : %.1f%n", (double) visitedAlt / qCount);
+        }
+    }
+}
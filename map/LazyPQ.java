@@ -0,0 +1,143 @@
+/*************************************************************************
+ *  Compilation:  javac LazyPQ.java
+ *  Dependencies: MinPQ.java
+ *
+ *  Binary heap of (key, priority) entries with no decrease-key.
+ *  change() pushes a second entry for the key and leaves the old one
+ *  in place; an entry is stale once its key has left the PQ or its
+ *  priority is no longer the key's current one, and stale entries are
+ *  dropped when they reach the top. Every operation is a plain sift
+ *  with no position index to keep up to date, at the cost of a heap
+ *  that holds up to one entry per insert or change.
+ *
+ *  The entry arrays grow by doubling and are kept across clear(), so
+ *  after the first few queries nothing is allocated.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+
+public class LazyPQ implements MinPQ {
+    private int[] heapKey = new int[64];         // entries, 1-based
+    private double[] heapPri = new double[64];
+    private int size;                            // entries, stale included
+    private final double[] current;              // current[k] = live priority of k
+    private final int[] mark;                    // mark[k] == gen iff k is on the PQ
+    private int gen = 1;
+    private int N;                               // live keys
+
+    // tracking metrics
+    private int insertCount, changeCount, delMinCount, maxPQSize;
+    private int staleCount;                      // stale entries dropped
+
+    public LazyPQ(int maxN) {
+        current = new double[maxN];
+        mark = new int[maxN];
+    }
+
+    // builds lazy-deletion heaps
+    public static MinPQ.Factory factory() {
+        return new MinPQ.Factory() {
+            public MinPQ create(int maxN) { return new LazyPQ(maxN); }
+            public String name() { return "lazy"; }
+        };
+    }
+
+    public boolean isEmpty() { return N == 0; }
+
+    public void clear() {
+        gen++;
+        size = 0;
+        N = 0;
+        insertCount = changeCount = delMinCount = maxPQSize = 0;
+        staleCount = 0;
+    }
+
+    public boolean contains(int k) { return mark[k] == gen; }
+
+    public double minPriority() {
+        dropStale();
+        return heapPri[1];
+    }
+
+    public void insert(int k, double val) {
+        insertCount++;
+        mark[k] = gen;
+        current[k] = val;
+        N++;
+        push(k, val);
+    }
+
+    public int delMin() {
+        delMinCount++;
+        dropStale();
+        int min = heapKey[1];
+        pop();
+        mark[min] = 0;
+        N--;
+        return min;
+    }
+
+    public void change(int k, double val) {
+        changeCount++;
+        current[k] = val;
+        push(k, val);
+    }
+
+    // metrics since construction or the last clear(); maxSize counts entries
+    public int insertCount() { return insertCount; }
+    public int changeCount() { return changeCount; }
+    public int delMinCount() { return delMinCount; }
+    public int maxSize()     { return maxPQSize;   }
+    public int staleCount()  { return staleCount;  }
+
+    public long memoryBytes() {
+        return (long) current.length * (Double.BYTES + Integer.BYTES)
+             + (long) heapKey.length * (Integer.BYTES + Double.BYTES);
+    }
+
+
+    // pop entries off the top until it is live
+    private void dropStale() {
+        while (true) {
+            int k = heapKey[1];
+            if (mark[k] == gen && heapPri[1] == current[k]) return;
+            pop();
+            staleCount++;
+        }
+    }
+
+    private void push(int k, double val) {
+        if (++size == heapKey.length) {
+            heapKey = Arrays.copyOf(heapKey, 2 * size);
+            heapPri = Arrays.copyOf(heapPri, 2 * size);
+        }
+        int i = size;
+        while (i > 1 && heapPri[i / 2] > val) {
+            heapKey[i] = heapKey[i / 2];
+            heapPri[i] = heapPri[i / 2];
+            i /= 2;
+        }
+        heapKey[i] = k;
+        heapPri[i] = val;
+        maxPQSize = Math.max(maxPQSize, size);
+    }
+
+    // remove the top entry
+    private void pop() {
+        int k = heapKey[size];
+        double val = heapPri[size];
+        size--;
+        int i = 1;
+        while (2 * i <= size) {
+            int c = 2 * i;
+            if (c < size && heapPri[c + 1] < heapPri[c]) c++;
+            if (heapPri[c] >= val) break;
+            heapKey[i] = heapKey[c];
+            heapPri[i] = heapPri[c];
+            i = c;
+        }
+        heapKey[i] = k;
+        heapPri[i] = val;
+    }
+}
@@ -0,0 +1,74 @@
+/*************************************************************************
+ *  Compilation:  javac LoadTest.java
+ *  Execution:    java LoadTest url query-file [clients] [-paths]
+ *  Dependencies: Histogram.java Batch.java IntScanner.java
+ *
+ *  Closed-loop load generator for RouteServer: each client thread sends
+ *  one GET /distance (or /path) at a time for the next s-d pair of the
+ *  query file, until every pair has been sent. Reports throughput and
+ *  the client-side latency percentiles.
+ *
+ *  % java RouteServer usa.txt 8080 &
+ *  % java LoadTest http://127.0.0.1:8080 usa-5000short.txt 16
+ *
+ *************************************************************************/
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java LoadTest <url> <query-file> [clients] [-paths]");
+            System.exit(1);
+        }
+        final String url = args[0];
+        final int[] q = Batch.readQueries(IntScanner.open(args[1]));
+        int clients = 8;
+        String endpoint = "/distance";
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("-paths")) endpoint = "/path";
+            else clients = Integer.parseInt(args[i]);
+        }
+        final String path = endpoint;
+        final int count = q.length / 2;
+        final HttpClient http = HttpClient.newHttpClient();
+        final Histogram latency = new Histogram();
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+
+        Thread[] threads = new Thread[clients];
+        long start = System.nanoTime();
+        for (int t = 0; t < clients; t++) {
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    int i;
+                    while ((i = next.getAndIncrement()) < count) {
+                        HttpRequest request = HttpRequest.newBuilder(
+                            URI.create(url + path + "?s=" + q[2 * i] + "&d=" + q[2 * i + 1])).build();
+                        long t0 = System.nanoTime();
+                        try {
+                            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                            if (response.statusCode() != 200) errors.incrementAndGet();
+                        }
+                        catch (Exception e) { errors.incrementAndGet(); }
+                        latency.record(System.nanoTime() - t0);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.err.printf("%d requests from %d clients in %.3f s: %.1f requests/s, %d errors%n",
+                          count, clients, seconds, count / seconds, errors.get());
+        System.err.printf("latency p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                          latency.percentile(50) / 1e6, latency.percentile(99) / 1e6,
+                          latency.percentile(99.9) / 1e6, latency.max() / 1e6);
+    }
+}
@@ -0,0 +1,105 @@
+/*************************************************************************
+ *  Compilation:  javac Metrics.java
+ *  Dependencies: QueryContext.java Histogram.java
+ *
+ *  Snapshot of the search metrics of one or more QueryContexts, summed:
+ *  queries, vertices settled, edges relaxed, priority queue operations,
+ *  peak queue size, bytes allocated by the searching threads, and the
+ *  latency histogram (p50/p99/p99.9). Router.metrics() takes one over
+ *  all its contexts. toJson() and toCsv() dump it; csvHeader() names
+ *  the CSV columns.
+ *
+ *  Bytes allocated come from the JVM's per-thread allocation counter
+ *  (com.sun.management.ThreadMXBean), read at the start and end of each
+ *  query; on a JVM without one they stay 0.
+ *
+ *************************************************************************/
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+public class Metrics {
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private long queries, settled, relaxed, inserts, changes, delMins, allocatedBytes;
+    private int maxPQSize;
+    private final Histogram latency = new Histogram();   // ns
+
+    // metrics of the given contexts, summed
+    public static Metrics of(Iterable<QueryContext> contexts) {
+        Metrics m = new Metrics();
+        for (QueryContext ctx : contexts) {
+            m.queries        += ctx.queries();
+            m.settled        += ctx.settled();
+            m.relaxed        += ctx.relaxed();
+            m.inserts        += ctx.inserts();
+            m.changes        += ctx.changes();
+            m.delMins        += ctx.delMins();
+            m.allocatedBytes += ctx.allocatedBytes();
+            m.maxPQSize = Math.max(m.maxPQSize, ctx.maxPQSize());
+            m.latency.add(ctx.latency());
+        }
+        return m;
+    }
+
+    public static Metrics of(QueryContext... contexts) {
+        return of(Arrays.asList(contexts));
+    }
+
+    public long queries()        { return queries;        }
+    public long settled()        { return settled;        }
+    public long relaxed()        { return relaxed;        }
+    public long inserts()        { return inserts;        }
+    public long changes()        { return changes;        }
+    public long delMins()        { return delMins;        }
+    public int  maxPQSize()      { return maxPQSize;      }
+    public long allocatedBytes() { return allocatedBytes; }
+    public Histogram latency()   { return latency;        }
+
+    public String toJson() {
+        return String.format(Locale.ROOT,
+            "{\"queries\":%d,\"settled\":%d,\"relaxed\":%d,\"inserts\":%d,\"changes\":%d,"
+            + "\"delMins\":%d,\"maxPQSize\":%d,\"allocatedBytes\":%d,"
+            + "\"latencyNanos\":{\"count\":%d,\"mean\":%.1f,\"p50\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d}}",
+            queries, settled, relaxed, inserts, changes, delMins, maxPQSize, allocatedBytes,
+            latency.count(), latency.mean(), latency.percentile(50), latency.percentile(99),
+            latency.percentile(99.9), latency.max());
+    }
+
+    public static String csvHeader() {
+        return "queries,settled,relaxed,inserts,changes,delMins,maxPQSize,allocatedBytes,"
+             + "latencyMeanNanos,p50Nanos,p99Nanos,p999Nanos,maxNanos";
+    }
+
+    public String toCsv() {
+        return String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%d,%d,%d,%.1f,%d,%d,%d,%d",
+            queries, settled, relaxed, inserts, changes, delMins, maxPQSize, allocatedBytes,
+            latency.mean(), latency.percentile(50), latency.percentile(99),
+            latency.percentile(99.9), latency.max());
+    }
+
+    public String toString() { return toJson(); }
+
+
+    // bytes allocated so far by the calling thread; 0 if unsupported
+    static long allocatedByThisThread() {
+        if (THREADS == null) return 0;
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // the HotSpot thread bean with allocation counting on, or null
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (!threads.isThreadAllocatedMemorySupported()) return null;
+            if (!threads.isThreadAllocatedMemoryEnabled()) threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        }
+        catch (RuntimeException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*************************************************************************
+ *  Compilation:  javac MinPQ.java
+ *  Dependencies: IndexPQ.java RadixPQ.java PairingPQ.java LazyPQ.java
+ *
+ *  Indexed min priority queue over keys 0..maxN-1 with double
+ *  priorities, as Dijkstra uses it. Implementations:
+ *
+ *      IndexPQ    d-ary heap, d = 4 unless configured
+ *      RadixPQ    monotone radix heap on integer-scaled priorities
+ *      PairingPQ  pairing heap
+ *      LazyPQ     binary heap without decrease-key; change() pushes a
+ *                 new entry and delMin() skips the stale ones
+ *
+ *  Every queue counts its own operations since construction or the
+ *  last clear(), which must run in O(1) or close to it: QueryContext
+ *  keeps its queues for the life of the context.
+ *
+ *************************************************************************/
+
+public interface MinPQ {
+
+    boolean isEmpty();
+
+    // remove every key, keeping the capacity
+    void clear();
+
+    // is key k currently on the PQ?
+    boolean contains(int k);
+
+    // priority of the smallest key, without removing it
+    double minPriority();
+
+    // insert key k with given priority
+    void insert(int k, double val);
+
+    // remove and return the key with smallest priority
+    int delMin();
+
+    // change the priority of key k, which must be on the PQ
+    void change(int k, double val);
+
+    // metrics since construction or the last clear()
+    int insertCount();
+    int changeCount();
+    int delMinCount();
+    int maxSize();
+
+    // estimated size of the queue's arrays
+    long memoryBytes();
+
+
+    // builds queues of one kind, so each QueryContext can have its own
+    interface Factory {
+        MinPQ create(int maxN);
+        String name();
+    }
+
+    // factory for a name as given on the command line:
+    // 2-ary, 4-ary, 8-ary (any d), radix, pairing or lazy
+    static Factory factory(String name) {
+        if (name.endsWith("-ary")) return IndexPQ.factory(Integer.parseInt(name.substring(0, name.length() - 4)));
+        if (name.equals("radix"))   return RadixPQ.factory(RadixPQ.DEFAULT_SCALE);
+        if (name.equals("pairing")) return PairingPQ.factory();
+        if (name.equals("lazy"))    return LazyPQ.factory();
+        throw new IllegalArgumentException("Unknown priority queue " + name
+                                           + ", expected d-ary, radix, pairing or lazy");
+    }
+}
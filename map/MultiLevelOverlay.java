@@ -0,0 +1,582 @@
+/*************************************************************************
+ *  Compilation:  javac MultiLevelOverlay.java
+ *  Execution:    java MultiLevelOverlay graph-file [threads] [cell sizes...] < input.txt
+ *  Dependencies: EuclideanGraph.java GraphFile.java IndexPQ.java MinPQ.java
+ *                Dijkstra.java DynamicGraph.java IntScanner.java Batch.java
+ *
+ *  Customizable route planning: a multi-level partition overlay whose
+ *  preprocessing splits into a metric-independent part, done once, and
+ *  a fast customization that is rerun whenever the weights change.
+ *
+ *  Partition (once). The vertices are split by recursive coordinate
+ *  bisection: each part is cut at the median of its wider axis, down to
+ *  2^D leaf cells. A level with cell size U uses the cuts down to depth
+ *  max(1, ceil(log2(V / U))), so the cells of each level are unions of
+ *  cells of the level below; a size that gives no smaller depth than the
+ *  level below, as on a small graph, adds no level. A vertex is a
+ *  boundary vertex of its level-l cell if it has a neighbor in another
+ *  level-l cell.
+ *
+ *  Customization (per metric). For each level-l cell, a clique matrix
+ *  holds the shortest distance inside the cell between every pair of
+ *  its boundary vertices: level 1 from Dijkstra over the original edges
+ *  inside the cell, level l over the level l-1 cliques and cut edges of
+ *  the subcells. Cells of one level are independent and are spread over
+ *  a pool of worker threads kept for the life of the overlay, each with
+ *  search arrays that are reused from one customization to the next.
+ *  Given the changed edges, only the cells containing both ends of one,
+ *  and the cells above them, are redone.
+ *
+ *  Query. Bidirectional A* where a vertex v is scanned at the highest
+ *  level whose cell of v holds neither s nor t: the original edges at
+ *  level 0, otherwise v's clique row plus its edges leaving the cell.
+ *  Both sides use the average of the Euclidean bounds to t and from s
+ *  as potential, which holds on clique edges too (a path inside a cell
+ *  is no shorter than the straight line), and stop once the two queue
+ *  minima add up to the best meeting distance. Only distances are
+ *  returned; expanding clique edges back into a path is left to Router.
+ *
+ *  A customization is a snapshot of the graph plus its matrices and is
+ *  published in one volatile write, so a query runs on one consistent
+ *  metric. Snapshots must have the vertices and edges of the base graph,
+ *  closed ones weighted CLOSED, and no weight below the edge's length,
+ *  as DynamicGraph's do.
+ *
+ *  % java MultiLevelOverlay usa.txt 8 64 1024 16384 < usa-1000long.txt
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MultiLevelOverlay implements DynamicGraph.Listener, AutoCloseable {
+    private static final double INFINITY = Double.MAX_VALUE;
+    public static final int[] DEFAULT_CELL_SIZES = { 64, 1024, 16384 };
+
+    // one level of the partition; metric-independent
+    private static final class Level {
+        final int shift;              // cell of v = leaf[v] >>> shift
+        final int cells;
+        final int[] boundaryStart;    // boundary vertices of cell c: boundary[boundaryStart[c] ..]
+        final int[] boundary;
+        final int[] boundaryIndex;    // position of v among its cell's boundary vertices, or -1
+        final int[] matrixStart;      // cell c's matrix, row-major, at matrixStart[c]
+
+        Level(int shift, int cells, int[] boundaryStart, int[] boundary, int[] boundaryIndex) {
+            this.shift = shift;
+            this.cells = cells;
+            this.boundaryStart = boundaryStart;
+            this.boundary = boundary;
+            this.boundaryIndex = boundaryIndex;
+            matrixStart = new int[cells + 1];
+            for (int c = 0; c < cells; c++) {
+                int n = boundaryStart[c + 1] - boundaryStart[c];
+                matrixStart[c + 1] = matrixStart[c] + n * n;
+            }
+        }
+
+        int size(int c) { return boundaryStart[c + 1] - boundaryStart[c]; }
+    }
+
+    // a graph snapshot and the clique matrices customized for it
+    private static final class Metric {
+        final EuclideanGraph G;
+        final double[][] matrices;    // matrices[l - 1] for level l
+        Metric(EuclideanGraph G, double[][] matrices) { this.G = G; this.matrices = matrices; }
+    }
+
+    private final int V;
+    private final int threads;
+    private final int[] leaf;          // leaf cell of each vertex
+    private final Level[] levels;      // levels[l - 1] for level l = 1 .. L
+    private final ExecutorService exec;  // customization workers; null on one thread
+    private volatile Metric metric;
+
+    private final Queue<Searcher> pool = new ConcurrentLinkedQueue<Searcher>();
+    private final Queue<Scratch> scratches = new ConcurrentLinkedQueue<Scratch>();
+
+    // partition G for the given cell sizes, smallest first, and customize
+    public MultiLevelOverlay(EuclideanGraph G, int[] cellSizes, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+        this.V = G.V();
+        this.threads = threads;
+
+        // depth of the bisection for each level, strictly decreasing; on a
+        // small graph several sizes round to the same depth and only the
+        // first of them is kept
+        int L = 0;
+        int[] depth = new int[cellSizes.length];
+        for (int l = 0; l < cellSizes.length; l++) {
+            if (cellSizes[l] < 1 || (l > 0 && cellSizes[l] <= cellSizes[l - 1]))
+                throw new IllegalArgumentException("Cell sizes must be positive and grow from level to level");
+            int d = 0;
+            while (d < 30 && ((long) cellSizes[l] << d) < V) d++;
+            d = Math.max(1, d);
+            if (L == 0 || d < depth[L - 1]) depth[L++] = d;
+        }
+        if (L == 0) throw new IllegalArgumentException("Need at least one cell size");
+        int D = depth[0];
+
+        leaf = new int[V];
+        int[] ids = new int[V];
+        for (int v = 0; v < V; v++) ids[v] = v;
+        bisect(G, ids, 0, V, 0, D, 0);
+
+        levels = new Level[L];
+        for (int l = 0; l < L; l++)
+            levels[l] = level(G, D - depth[l], 1 << depth[l]);
+
+        exec = (threads > 1) ? Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "overlay-worker");
+                t.setDaemon(true);
+                return t;
+            }
+        }) : null;
+        metric = customize(G, null, null);
+    }
+
+    public MultiLevelOverlay(EuclideanGraph G) {
+        this(G, DEFAULT_CELL_SIZES, Runtime.getRuntime().availableProcessors());
+    }
+
+    // recompute every clique matrix for a new snapshot of the graph
+    public void customize(EuclideanGraph snapshot) {
+        checkVertices(snapshot);
+        metric = customize(snapshot, null, null);
+    }
+
+    // recompute only the matrices the changed edges (v0 w0 v1 w1 ...) can affect
+    public void customize(EuclideanGraph snapshot, int[] edges) {
+        checkVertices(snapshot);
+        metric = customize(snapshot, edges, metric);
+    }
+
+    // DynamicGraph commits are customized incrementally
+    public void updated(EuclideanGraph snapshot, int[] edges, boolean raisedOnly) {
+        customize(snapshot, edges);
+    }
+
+    // shortest path distance from s to t; INFINITY if unreachable
+    public double distance(int s, int t) {
+        Searcher searcher = pool.poll();
+        if (searcher == null) searcher = new Searcher();
+        try { return searcher.distance(metric, s, t); }
+        finally { pool.offer(searcher); }
+    }
+
+    public EuclideanGraph graph() { return metric.G; }
+    public int levels()           { return levels.length; }
+    public int cells(int l)       { return levels[l - 1].cells; }
+
+    public int boundaryVertices(int l) {
+        return levels[l - 1].boundary.length;
+    }
+
+    // estimate memory usage of the partition and the matrices
+    public long memoryBytes() {
+        long bytes = (long) V * Integer.BYTES;
+        for (Level level : levels)
+            bytes += (long) (2 * level.cells + level.boundary.length + V) * Integer.BYTES
+                   + (long) level.matrixStart[level.cells] * Double.BYTES;
+        return bytes;
+    }
+
+
+    /*******************************************************************
+     *  Partition
+     *******************************************************************/
+
+    // split ids[lo..hi) at the median of the wider axis, depth times
+    private void bisect(EuclideanGraph G, int[] ids, int lo, int hi, int d, int D, int path) {
+        if (d == D) {
+            for (int i = lo; i < hi; i++) leaf[ids[i]] = path;
+            return;
+        }
+        if (hi - lo > 1) {
+            int loX = Integer.MAX_VALUE, loY = Integer.MAX_VALUE;
+            int hiX = Integer.MIN_VALUE, hiY = Integer.MIN_VALUE;
+            for (int i = lo; i < hi; i++) {
+                int v = ids[i];
+                loX = Math.min(loX, G.x(v)); hiX = Math.max(hiX, G.x(v));
+                loY = Math.min(loY, G.y(v)); hiY = Math.max(hiY, G.y(v));
+            }
+            boolean byX = (long) hiX - loX >= (long) hiY - loY;
+
+            // sort the range by coordinate, ties by id
+            long[] keys = new long[hi - lo];
+            for (int i = lo; i < hi; i++) {
+                int v = ids[i];
+                long c = (byX ? G.x(v) : G.y(v)) - (long) Integer.MIN_VALUE;
+                keys[i - lo] = (c << 32) | v;
+            }
+            Arrays.sort(keys);
+            for (int i = lo; i < hi; i++) ids[i] = (int) keys[i - lo];
+        }
+        int mid = (lo + hi) >>> 1;
+        bisect(G, ids, lo, mid, d + 1, D, path << 1);
+        bisect(G, ids, mid, hi, d + 1, D, (path << 1) | 1);
+    }
+
+    // boundary vertices of the cells at one level
+    private Level level(EuclideanGraph G, int shift, int cells) {
+        int[] boundaryIndex = new int[V];
+        int[] boundaryStart = new int[cells + 1];
+        for (int v = 0; v < V; v++) {
+            boundaryIndex[v] = -1;
+            for (int e = G.begin(v); e < G.end(v); e++) {
+                if ((leaf[G.target(e)] >>> shift) != (leaf[v] >>> shift)) {
+                    boundaryIndex[v] = 0;
+                    boundaryStart[(leaf[v] >>> shift) + 1]++;
+                    break;
+                }
+            }
+        }
+        for (int c = 0; c < cells; c++) boundaryStart[c + 1] += boundaryStart[c];
+        int[] boundary = new int[boundaryStart[cells]];
+        int[] next = Arrays.copyOf(boundaryStart, cells);
+        for (int v = 0; v < V; v++) {
+            if (boundaryIndex[v] < 0) continue;
+            int c = leaf[v] >>> shift;
+            boundaryIndex[v] = next[c] - boundaryStart[c];
+            boundary[next[c]++] = v;
+        }
+        return new Level(shift, cells, boundaryStart, boundary, boundaryIndex);
+    }
+
+    private void checkVertices(EuclideanGraph snapshot) {
+        if (snapshot.V() != V) throw new IllegalArgumentException("Snapshot has a different vertex count");
+    }
+
+
+    /*******************************************************************
+     *  Customization
+     *******************************************************************/
+
+    // matrices for G; with edges and an old metric, only the cells the
+    // edges touch (and their ancestors) are recomputed
+    private Metric customize(final EuclideanGraph G, int[] edges, Metric old) {
+        final double[][] matrices = new double[levels.length][];
+        boolean[] dirtyBelow = null;
+        for (int l = 1; l <= levels.length; l++) {
+            final Level level = levels[l - 1];
+            boolean[] dirty = new boolean[level.cells];
+            if (old == null || edges == null) Arrays.fill(dirty, true);
+            else {
+                for (int i = 0; i < edges.length; i += 2) {
+                    int c = leaf[edges[i]] >>> level.shift;
+                    if (c == (leaf[edges[i + 1]] >>> level.shift)) dirty[c] = true;
+                }
+                if (dirtyBelow != null) {
+                    int ratio = dirtyBelow.length / level.cells;
+                    for (int c = 0; c < dirtyBelow.length; c++)
+                        if (dirtyBelow[c]) dirty[c / ratio] = true;
+                }
+            }
+
+            matrices[l - 1] = (old == null) ? new double[level.matrixStart[level.cells]]
+                                            : old.matrices[l - 1].clone();
+            int n = 0;
+            final int[] todo = new int[level.cells];
+            for (int c = 0; c < level.cells; c++) if (dirty[c]) todo[n++] = c;
+            final int lev = l;
+            forEach(n, new CellTask() {
+                public void run(Scratch scratch, int i) {
+                    scratch.cell(G, matrices, lev, todo[i]);
+                }
+            });
+            dirtyBelow = dirty;
+        }
+        return new Metric(G, matrices);
+    }
+
+    private interface CellTask {
+        void run(Scratch scratch, int i);
+    }
+
+    // run tasks 0..count-1 on the worker threads, one Scratch each
+    private void forEach(final int count, final CellTask task) {
+        if (count == 0) return;
+        final AtomicInteger next = new AtomicInteger();
+        int workers = Math.min(threads, count);
+        if (workers <= 1) {
+            Scratch scratch = scratch();
+            try { for (int i = 0; i < count; i++) task.run(scratch, i); }
+            finally { scratches.offer(scratch); }
+            return;
+        }
+        try {
+            Future<?>[] futures = new Future<?>[workers];
+            for (int t = 0; t < workers; t++) {
+                futures[t] = exec.submit(new Runnable() {
+                    public void run() {
+                        Scratch scratch = scratch();
+                        try {
+                            int i;
+                            while ((i = next.getAndIncrement()) < count) task.run(scratch, i);
+                        }
+                        finally { scratches.offer(scratch); }
+                    }
+                });
+            }
+            for (Future<?> f : futures) f.get();
+        }
+        catch (InterruptedException e) { throw new RuntimeException(e); }
+        catch (ExecutionException e)   { throw new RuntimeException(e.getCause()); }
+    }
+
+    // a Scratch holds arrays of V entries, too big to allocate per update,
+    // so they are pooled: one per worker that has ever run at once
+    private Scratch scratch() {
+        Scratch scratch = scratches.poll();
+        return (scratch != null) ? scratch : new Scratch();
+    }
+
+    // stop the customization workers; they are daemons, so this is optional
+    public void close() { if (exec != null) exec.shutdown(); }
+
+    // per-worker search arrays for customizing cells
+    private final class Scratch {
+        final double[] dist = new double[V];
+        final int[] seen = new int[V];
+        final MinPQ pq = new IndexPQ(V);
+        int stamp;
+
+        // fill the level-l matrix of cell c with one search per boundary vertex
+        void cell(EuclideanGraph G, double[][] matrices, int l, int c) {
+            Level level = levels[l - 1];
+            Level below = (l > 1) ? levels[l - 2] : null;
+            double[] below_m = (l > 1) ? matrices[l - 2] : null;
+            double[] m = matrices[l - 1];
+            int start = level.boundaryStart[c];
+            int n = level.size(c);
+
+            for (int i = 0; i < n; i++) {
+                int b = level.boundary[start + i];
+                stamp++;
+                pq.clear();
+                dist[b] = 0.0;
+                seen[b] = stamp;
+                pq.insert(b, 0.0);
+                int left = n;                 // boundary vertices not yet settled
+                while (!pq.isEmpty()) {
+                    int v = pq.delMin();
+                    if (level.boundaryIndex[v] >= 0 && (leaf[v] >>> level.shift) == c && --left == 0) break;
+                    if (below == null) {
+                        // level 1: original edges inside the cell
+                        for (int e = G.begin(v); e < G.end(v); e++) {
+                            int w = G.target(e);
+                            if ((leaf[w] >>> level.shift) == c) relax(w, dist[v] + G.weight(e));
+                        }
+                    }
+                    else {
+                        // clique of v's subcell, then cut edges between subcells of c
+                        int sub = leaf[v] >>> below.shift;
+                        int bs = below.boundaryStart[sub];
+                        int k = below.size(sub);
+                        int row = below.matrixStart[sub] + below.boundaryIndex[v] * k;
+                        for (int j = 0; j < k; j++) {
+                            double wt = below_m[row + j];
+                            if (wt < INFINITY) relax(below.boundary[bs + j], dist[v] + wt);
+                        }
+                        for (int e = G.begin(v); e < G.end(v); e++) {
+                            int w = G.target(e);
+                            if ((leaf[w] >>> level.shift) == c && (leaf[w] >>> below.shift) != sub)
+                                relax(w, dist[v] + G.weight(e));
+                        }
+                    }
+                }
+                int row = level.matrixStart[c] + i * n;
+                for (int j = 0; j < n; j++) {
+                    int w = level.boundary[start + j];
+                    m[row + j] = (seen[w] == stamp) ? dist[w] : INFINITY;
+                }
+            }
+        }
+
+        private void relax(int w, double d) {
+            if (d == EuclideanGraph.CLOSED) return;      // over a closed edge
+            if (seen[w] != stamp) {
+                seen[w] = stamp;
+                dist[w] = d;
+                pq.insert(w, d);
+            }
+            else if (d < dist[w] && pq.contains(w)) {
+                dist[w] = d;
+                pq.change(w, d);
+            }
+        }
+    }
+
+
+    /*******************************************************************
+     *  Query
+     *******************************************************************/
+
+    // per-thread state of a bidirectional overlay search
+    private final class Searcher {
+        final double[] distF = new double[V], distB = new double[V];
+        final int[] seenF = new int[V], seenB = new int[V];
+        final double[] pot = new double[V];
+        final int[] potSeen = new int[V];
+        final MinPQ pqF = new IndexPQ(V), pqB = new IndexPQ(V);
+        int stamp;
+        EuclideanGraph G;
+        int s, t;
+
+        double distance(Metric metric, int s, int t) {
+            if (s == t) return 0.0;
+            this.G = metric.G;
+            this.s = s;
+            this.t = t;
+            stamp++;
+            pqF.clear();
+            pqB.clear();
+            distF[s] = 0.0; seenF[s] = stamp; pqF.insert(s,  potential(s));
+            distB[t] = 0.0; seenB[t] = stamp; pqB.insert(t, -potential(t));
+            double best = INFINITY;
+
+            while (!pqF.isEmpty() && !pqB.isEmpty()) {
+                if (pqF.minPriority() + pqB.minPriority() >= best) break;
+                boolean forward = pqF.minPriority() <= pqB.minPriority();
+                int v = forward ? pqF.delMin() : pqB.delMin();
+                double d = forward ? distF[v] : distB[v];
+                int l = queryLevel(v, s, t);
+                if (l == 0) {
+                    for (int e = G.begin(v); e < G.end(v); e++)
+                        best = relax(forward, G.target(e), d + G.weight(e), best);
+                    continue;
+                }
+
+                Level level = levels[l - 1];
+                double[] m = metric.matrices[l - 1];
+                int c = leaf[v] >>> level.shift;
+                int bs = level.boundaryStart[c];
+                int k = level.size(c);
+                int row = level.matrixStart[c] + level.boundaryIndex[v] * k;
+                for (int j = 0; j < k; j++) {
+                    double wt = m[row + j];
+                    if (wt < INFINITY) best = relax(forward, level.boundary[bs + j], d + wt, best);
+                }
+                for (int e = G.begin(v); e < G.end(v); e++) {
+                    int w = G.target(e);
+                    if ((leaf[w] >>> level.shift) != c)
+                        best = relax(forward, w, d + G.weight(e), best);
+                }
+            }
+            return best;
+        }
+
+        // relax w to d on one side; returns the best meeting distance
+        private double relax(boolean forward, int w, double d, double best) {
+            MinPQ pq      = forward ? pqF   : pqB;
+            double[] dist = forward ? distF : distB;
+            int[] seen    = forward ? seenF : seenB;
+            if (d == EuclideanGraph.CLOSED) return best;  // over a closed edge
+            if (seen[w] != stamp) {
+                seen[w] = stamp;
+                dist[w] = d;
+                pq.insert(w, forward ? d + potential(w) : d - potential(w));
+            }
+            else if (d < dist[w] && pq.contains(w)) {
+                dist[w] = d;
+                pq.change(w, forward ? d + potential(w) : d - potential(w));
+            }
+            else return best;
+            double[] other = forward ? distB : distF;
+            int[] otherSeen = forward ? seenB : seenF;
+            if (otherSeen[w] == stamp && d + other[w] < best) return d + other[w];
+            return best;
+        }
+
+        // average of the straight-line distance to t and from s; the
+        // forward search adds it to its keys and the backward one
+        // subtracts it, so both see the same reduced lengths
+        private double potential(int v) {
+            if (potSeen[v] != stamp) {
+                potSeen[v] = stamp;
+                pot[v] = 0.5 * (G.distance(v, t) - G.distance(s, v));
+            }
+            return pot[v];
+        }
+    }
+
+    // highest level at which v's cell holds neither s nor t; 0 if none
+    private int queryLevel(int v, int s, int t) {
+        for (int l = levels.length; l >= 1; l--) {
+            int shift = levels[l - 1].shift;
+            int c = leaf[v] >>> shift;
+            if (c != (leaf[s] >>> shift) && c != (leaf[t] >>> shift)) return l;
+        }
+        return 0;
+    }
+
+
+    // test client: build, customize, answer queries, check against
+    // Dijkstra, then customize incrementally after random slowdowns
+    public static void main(String[] args) {
+        EuclideanGraph G = GraphFile.read(args[0]);
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int[] sizes = DEFAULT_CELL_SIZES;
+        if (args.length > 2) {
+            sizes = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) sizes[i - 2] = Integer.parseInt(args[i]);
+        }
+
+        long start = System.nanoTime();
+        MultiLevelOverlay overlay = new MultiLevelOverlay(G, sizes, threads);
+        long built = System.nanoTime();
+        overlay.customize(G);
+        long customized = System.nanoTime();
+        System.err.printf("Partition + first customization %.3f s; full customization on %d threads %.3f s%n",
+                          (built - start) / 1e9, threads, (customized - built) / 1e9);
+        for (int l = 1; l <= overlay.levels(); l++)
+            System.err.printf("  level %d: %d cells, %d boundary vertices%n",
+                              l, overlay.cells(l), overlay.boundaryVertices(l));
+        System.err.printf("  %.1f MB%n", overlay.memoryBytes() / 1e6);
+
+        IntScanner in = new IntScanner(System.in);
+        int[] q = Batch.readQueries(in);
+        Dijkstra dijkstra = new Dijkstra(G);
+        start = System.nanoTime();
+        for (int i = 0; i < q.length; i += 2) System.out.println(overlay.distance(q[i], q[i + 1]));
+        long end = System.nanoTime();
+        System.err.printf("%d queries in %.3f ms each%n", q.length / 2, (end - start) / 1e6 / (q.length / 2));
+
+        // spot-check, then slow down random edges and check again
+        java.util.Random random = new java.util.Random(20240601L);
+        DynamicGraph dynamic = new DynamicGraph(G);
+        dynamic.addListener(overlay);
+        int[] batches = { 1, 10, 100 };
+        for (int round = 0; round <= batches.length; round++) {
+            for (int i = 0; i < Math.min(q.length, 200); i += 2) {
+                EuclideanGraph H = dynamic.snapshot();
+                double expect = new Dijkstra(H).distance(q[i], q[i + 1]);
+                double got = overlay.distance(q[i], q[i + 1]);
+                if (Math.abs(expect - got) > 1e-6)
+                    throw new RuntimeException("Mismatch " + q[i] + " " + q[i + 1] + ": " + got + " vs " + expect);
+            }
+            if (round == batches.length) break;
+            for (int u = 0; u < batches[round]; u++) {
+                int v = random.nextInt(G.V());
+                if (G.degree(v) == 0) continue;
+                int w = G.target(G.begin(v) + random.nextInt(G.degree(v)));
+                if (random.nextInt(10) == 0) dynamic.close(v, w);
+                else dynamic.setWeight(v, w, G.distance(v, w) * (1 + 3 * random.nextDouble()));
+            }
+            start = System.nanoTime();
+            dynamic.commit();
+            end = System.nanoTime();
+            System.err.printf("%d changed edges customized in %.1f ms%n", batches[round], (end - start) / 1e6);
+        }
+        System.err.println("Overlay distances agree with Dijkstra");
+        overlay.close();
+    }
+}
@@ -0,0 +1,158 @@
+/*************************************************************************
+ *  Compilation:  javac PairingPQ.java
+ *  Dependencies: MinPQ.java
+ *
+ *  Indexed pairing heap. The heap is a tree in child / next-sibling
+ *  form held in arrays; prev[k] is k's left sibling, or its parent if
+ *  k is the leftmost child. insert() and a decreasing change() link a
+ *  single node or a cut subtree with the root in O(1); delMin() melds
+ *  the root's children in the usual two passes (pairs left to right,
+ *  then right to left), amortized O(log N).
+ *
+ *  A change() that raises a priority cuts the key out, melds its
+ *  children back in and reinserts it; Dijkstra never does this.
+ *
+ *************************************************************************/
+
+public class PairingPQ implements MinPQ {
+    private final double[] priority;
+    private final int[] child;       // leftmost child, or -1
+    private final int[] next;        // right sibling, or -1
+    private final int[] prev;        // left sibling or parent, -1 for the root
+    private final int[] mark;        // mark[k] == gen iff k is on the PQ
+    private final int[] pairs;       // scratch for the two-pass meld
+    private int gen = 1;
+    private int root = -1;
+    private int N;
+
+    // tracking metrics
+    private int insertCount, changeCount, delMinCount, maxPQSize;
+    private long linkCount;          // tree links performed
+
+    public PairingPQ(int maxN) {
+        priority = new double[maxN];
+        child = new int[maxN];
+        next = new int[maxN];
+        prev = new int[maxN];
+        mark = new int[maxN];
+        pairs = new int[maxN];
+    }
+
+    // builds pairing heaps
+    public static MinPQ.Factory factory() {
+        return new MinPQ.Factory() {
+            public MinPQ create(int maxN) { return new PairingPQ(maxN); }
+            public String name() { return "pairing"; }
+        };
+    }
+
+    public boolean isEmpty() { return N == 0; }
+
+    public void clear() {
+        gen++;
+        root = -1;
+        N = 0;
+        insertCount = changeCount = delMinCount = maxPQSize = 0;
+        linkCount = 0;
+    }
+
+    public boolean contains(int k) { return mark[k] == gen; }
+
+    public double minPriority() { return priority[root]; }
+
+    public void insert(int k, double val) {
+        insertCount++;
+        mark[k] = gen;
+        priority[k] = val;
+        child[k] = next[k] = prev[k] = -1;
+        root = (root == -1) ? k : link(root, k);
+        N++;
+        maxPQSize = Math.max(maxPQSize, N);
+    }
+
+    public int delMin() {
+        delMinCount++;
+        int min = root;
+        root = meld(child[min]);
+        if (root != -1) prev[root] = -1;
+        mark[min] = 0;
+        N--;
+        return min;
+    }
+
+    public void change(int k, double val) {
+        changeCount++;
+        if (val <= priority[k]) {
+            priority[k] = val;
+            if (k == root) return;
+            cut(k);
+            root = link(root, k);
+        }
+        else {
+            // raise: take k out with its children, then put it back alone
+            if (k == root) {
+                root = meld(child[k]);
+                if (root != -1) prev[root] = -1;
+            }
+            else {
+                cut(k);
+                int sub = meld(child[k]);
+                if (sub != -1) root = link(root, sub);
+            }
+            priority[k] = val;
+            child[k] = next[k] = prev[k] = -1;
+            root = (root == -1) ? k : link(root, k);
+        }
+    }
+
+    // metrics since construction or the last clear()
+    public int insertCount() { return insertCount; }
+    public int changeCount() { return changeCount; }
+    public int delMinCount() { return delMinCount; }
+    public int maxSize()     { return maxPQSize;   }
+    public long linkCount()  { return linkCount;   }
+
+    public long memoryBytes() {
+        return (long) priority.length * (Double.BYTES + 5 * Integer.BYTES);
+    }
+
+
+    // make the larger of two roots the leftmost child of the smaller
+    private int link(int a, int b) {
+        linkCount++;
+        if (priority[b] < priority[a]) { int t = a; a = b; b = t; }
+        next[b] = child[a];
+        if (child[a] != -1) prev[child[a]] = b;
+        prev[b] = a;
+        child[a] = b;
+        next[a] = -1;
+        return a;
+    }
+
+    // detach the subtree rooted at k from its parent or siblings
+    private void cut(int k) {
+        int p = prev[k];
+        if (child[p] == k) child[p] = next[k];
+        else               next[p]  = next[k];
+        if (next[k] != -1) prev[next[k]] = p;
+        next[k] = prev[k] = -1;
+    }
+
+    // meld a sibling list into one tree, two passes; returns its root
+    private int meld(int first) {
+        if (first == -1) return -1;
+        int n = 0;
+        for (int k = first; k != -1; ) {
+            int a = k;
+            int b = next[a];
+            if (b == -1) { next[a] = prev[a] = -1; pairs[n++] = a; break; }
+            k = next[b];
+            next[a] = prev[a] = next[b] = prev[b] = -1;
+            pairs[n++] = link(a, b);
+        }
+        int r = pairs[n - 1];
+        for (int i = n - 2; i >= 0; i--)
+            r = link(pairs[i], r);
+        return r;
+    }
+}
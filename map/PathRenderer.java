@@ -0,0 +1,25 @@
+/*************************************************************************
+ *  Compilation:  javac PathRenderer.java
+ *  Dependencies: TurtleRenderer.java SvgRenderer.java
+ *
+ *  Where Paths sends the shortest paths it finds, so that drawing never
+ *  runs on the query thread. Implementations:
+ *
+ *      TurtleRenderer  a render thread draws the graph and then every
+ *                      path in a Turtle window as they arrive
+ *      SvgRenderer     paths are collected and written with the graph
+ *                      to one SVG file when the renderer is closed
+ *
+ *  add() must not block; close() waits for the rendering to finish.
+ *  Headless runs use no renderer at all, so no AWT class is loaded.
+ *
+ *************************************************************************/
+
+public interface PathRenderer {
+
+    // queue path (vertex ids, either end first) for drawing
+    void add(int[] path);
+
+    // finish drawing everything added so far
+    void close();
+}
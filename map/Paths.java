@@ -1,24 +1,46 @@
-import java.awt.Color;
+/*************************************************************************
+ *  Compilation:  javac Paths.java
+ *  Execution:    java Paths graph-file [-headless | -svg file] < input.txt
+ *  Dependencies: EuclideanGraph.java GraphFile.java Dijkstra.java QueryContext.java
+ *                IntScanner.java PathRenderer.java TurtleRenderer.java SvgRenderer.java
+ *
+ *  Answers s-d queries from standard input, printing for each the path
+ *  and the search metrics, then a summary.
+ *
+ *  Drawing is off the query thread. By default a TurtleRenderer opens
+ *  a window and draws the graph and the paths on a thread of its own;
+ *  -svg writes the graph and every path to an SVG file at the end
+ *  instead, and -headless draws nothing and never loads AWT.
+ *
+ *  % java Paths usa.txt -headless < usa-5000short.txt
+ *
+ *************************************************************************/
 
 public class Paths {
 
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) {
         if (args.length < 1) {
-            System.err.println("Usage: java Paths <graph-file> < <query-file>");
+            System.err.println("Usage: java Paths <graph-file> [-headless | -svg file] < <query-file>");
             System.exit(1);
         }
+        boolean headless = false;
+        String svg = null;
+        for (int i = 1; i < args.length; i++) {
+            if      (args[i].equals("-headless")) headless = true;
+            else if (args[i].equals("-svg"))      svg = args[++i];
+            else throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
 
         // overall timer 
         long overallStart = System.currentTimeMillis();
 
-        // 1) load & draw the graph
-        In graphIn = new In(args[0]);
-        EuclideanGraph G = new EuclideanGraph(graphIn);
+        // 1) load the graph; drawing it, if at all, is the renderer's job
+        EuclideanGraph G = GraphFile.read(args[0]);   // text or binary
         System.err.println("Done reading the graph " + args[0]);
 
-        Turtle.create(1000, 700);
-        G.draw();
-        Turtle.render();
+        PathRenderer renderer = null;
+        if (svg != null)    renderer = new SvgRenderer(G, svg, 1000, 700);
+        else if (!headless) renderer = new TurtleRenderer(G, 1000, 700);
 
         Dijkstra dijkstra = new Dijkstra(G);
 
@@ -30,15 +52,16 @@ public class Paths {
         long totalDelMin = 0;
         long totalMaxPQSize = 0;
 
+        IntScanner in = new IntScanner(System.in);
         while (true) {
             int s, d;
             try {
-                s = StdIn.readInt();
+                s = in.nextInt();
             } catch (RuntimeException e) {
                 break;
             }
             try {
-                d = StdIn.readInt();
+                d = in.nextInt();
             } catch (RuntimeException e) {
                 break;
             }
@@ -46,45 +69,38 @@ public class Paths {
             qCount++;
             dijkstra.enableAStar(d);
 
-            // Reset PQ metrics
-            IndexPQ.insertCount = 0;
-            IndexPQ.changeCount = 0;
-            IndexPQ.delMinCount = 0;
-            IndexPQ.maxPQSize = 0;
-
             long t0 = System.currentTimeMillis();
             dijkstra.compute(s, d);
             long t1 = System.currentTimeMillis();
 
             int visited = dijkstra.visitedCount();
             long elapsed = t1 - t0;
+            QueryContext ctx = dijkstra.context();
             totalVisited += visited;
             totalTime += elapsed;
-            totalInsert += IndexPQ.insertCount;
-            totalChange += IndexPQ.changeCount;
-            totalDelMin += IndexPQ.delMinCount;
-            totalMaxPQSize += IndexPQ.maxPQSize;
+            totalInsert += ctx.lastInserts();
+            totalChange += ctx.lastChanges();
+            totalDelMin += ctx.lastDelMins();
+            totalMaxPQSize += ctx.lastMaxPQSize();
 
             // per-query output
             System.out.println("Query " + qCount +
                                ": visited " + visited +
                                " nodes, time " + elapsed + " ms");
-            System.out.println("PQ Ops: insert=" + IndexPQ.insertCount +
-                               ", change=" + IndexPQ.changeCount +
-                               ", delMin=" + IndexPQ.delMinCount);
-            System.out.println("Max PQ Size: " + IndexPQ.maxPQSize);
+            System.out.println("PQ Ops: insert=" + ctx.lastInserts() +
+                               ", change=" + ctx.lastChanges() +
+                               ", delMin=" + ctx.lastDelMins());
+            System.out.println("Max PQ Size: " + ctx.lastMaxPQSize());
             System.out.println("Seen[] memory overhead: " +
                                (dijkstra.seenMemoryBytes()) + " bytes");
 
             dijkstra.showPath(d, s);
             System.out.println();
 
-            // draw and render the path
-            Turtle.setColor(Color.red);
-            dijkstra.drawPath(s, d);
-            Turtle.render();
-            Thread.sleep(5); // optional visual delay
+            // hand the path to the renderer; drawing happens elsewhere
+            if (renderer != null) renderer.add(dijkstra.path(s, d));
         }
+        long queriesEnd = System.currentTimeMillis();
 
         // summary info 
         if (qCount > 0) {
@@ -108,9 +124,15 @@ public class Paths {
                                dijkstra.seenMemoryBytes() + " bytes");
         }
 
-        // overall end & print
-        long overallEnd = System.currentTimeMillis();
+        // overall end & print; the runtime counts up to the last answer,
+        // before waiting for the renderer to catch up
         System.out.printf("%nTotal program runtime: %.3f s%n",
-                          (overallEnd - overallStart) / 1000.0);
+                          (queriesEnd - overallStart) / 1000.0);
+        if (renderer != null) {
+            long renderStart = System.currentTimeMillis();
+            renderer.close();
+            System.err.printf("Rendering finished %.3f s after the last query%n",
+                              (System.currentTimeMillis() - renderStart) / 1000.0);
+        }
     }
 }
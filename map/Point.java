@@ -14,6 +14,10 @@ public class Point {
 
     public Point(int x, int y) { this.x = x; this.y = y; }
 
+    // accessor methods
+    public int x() { return x; }
+    public int y() { return y; }
+
 
     // convert to string
     public String toString() {
@@ -0,0 +1,181 @@
+/*************************************************************************
+ *  Compilation:  javac QueryContext.java
+ *  Dependencies: MinPQ.java IndexPQ.java Histogram.java Metrics.java
+ *
+ *  Per-thread search state for Dijkstra: the dist[], pred[] and seen[]
+ *  arrays with their queryId stamp, the priority queue, the backward
+ *  arrays and queue used by bidirectional search, and metrics for the
+ *  queries run with it. The queues are cleared, not reallocated,
+ *  between queries, and come from a MinPQ.Factory (a 4-ary IndexPQ
+ *  unless told otherwise).
+ *
+ *  Metrics are kept per context, so recording them needs no shared
+ *  state: counters, a latency histogram and the bytes the thread
+ *  allocated during each query. instrument(false) turns the context
+ *  into a no-op recorder that keeps only the last query's counters and
+ *  never reads the clock. Metrics.of() sums contexts into a snapshot.
+ *
+ *  The graph is immutable and can be shared by any number of threads,
+ *  but a context must only be used by one thread at a time. Router
+ *  keeps a pool of them so concurrent queries never copy the graph.
+ *
+ *************************************************************************/
+
+public class QueryContext {
+
+    // search state, read and written by Dijkstra
+    final double[] dist;
+    final int[] pred;
+    final double[] h;        // A* heuristic, valid where seen[v] == queryId
+    final int[] seen;
+    final MinPQ pq;
+    final MinPQ.Factory queues;
+    int queryId = 1;
+
+    // backward search state, allocated on first bidirectional query
+    double[] distB;
+    int[] predB;
+    int[] seenB;
+    MinPQ pqB;
+
+    // isTarget[v] == queryId marks the targets of a one-to-many search
+    private int[] isTarget;
+
+    // scratch for Dijkstra.settle()
+    private int[] settleOrder;
+
+    // metrics over all queries run in this context; written only by the
+    // thread holding the context, volatile so other threads can read them
+    private volatile long queries;
+    private volatile long settled;
+    private volatile long relaxed;
+    private volatile long inserts;
+    private volatile long changes;
+    private volatile long delMins;
+    private volatile int  maxPQSize;
+    private volatile long allocatedBytes;
+    private final Histogram latency = new Histogram();   // ns per query
+    private volatile boolean instrumented = true;
+
+    // metrics of the last query only
+    private int lastSettled, lastRelaxed, lastInserts, lastChanges, lastDelMins, lastMaxPQSize;
+    private long lastNanos, lastAllocatedBytes;
+    private long startNanos, startAllocated;
+
+    public QueryContext(int V) {
+        this(V, IndexPQ.factory(4));
+    }
+
+    public QueryContext(int V, MinPQ.Factory queues) {
+        this.queues = queues;
+        dist = new double[V];
+        pred = new int[V];
+        h    = new double[V];
+        seen = new int[V];  // default 0 = never seen
+        pq   = queues.create(V);
+    }
+
+    // make sure the backward arrays exist
+    void ensureBackward() {
+        if (distB != null) return;
+        int V = dist.length;
+        distB = new double[V];
+        predB = new int[V];
+        seenB = new int[V];
+        pqB   = queues.create(V);
+    }
+
+    // the target marks, allocated on first use
+    int[] ensureTargets() {
+        if (isTarget == null) isTarget = new int[dist.length];
+        return isTarget;
+    }
+
+    int[] ensureSettleOrder() {
+        if (settleOrder == null) settleOrder = new int[dist.length];
+        return settleOrder;
+    }
+
+    // a query is starting; read the clock and allocation counter
+    void start() {
+        if (!instrumented) return;
+        startAllocated = Metrics.allocatedByThisThread();
+        startNanos = System.nanoTime();
+    }
+
+    // fold the counters of a finished query into the metrics
+    void record(int settledCount, int relaxedCount, MinPQ forward, MinPQ backward) {
+        lastSettled   = settledCount;
+        lastRelaxed   = relaxedCount;
+        lastInserts   = forward.insertCount();
+        lastChanges   = forward.changeCount();
+        lastDelMins   = forward.delMinCount();
+        lastMaxPQSize = forward.maxSize();
+        if (backward != null) {
+            lastInserts   += backward.insertCount();
+            lastChanges   += backward.changeCount();
+            lastDelMins   += backward.delMinCount();
+            lastMaxPQSize += backward.maxSize();
+        }
+        if (!instrumented) {
+            lastNanos = lastAllocatedBytes = 0;
+            return;
+        }
+        lastNanos = System.nanoTime() - startNanos;
+        lastAllocatedBytes = Metrics.allocatedByThisThread() - startAllocated;
+        latency.record(lastNanos);
+        queries++;
+        settled += lastSettled;
+        relaxed += lastRelaxed;
+        inserts += lastInserts;
+        changes += lastChanges;
+        delMins += lastDelMins;
+        if (lastMaxPQSize > maxPQSize) maxPQSize = lastMaxPQSize;
+        allocatedBytes += lastAllocatedBytes;
+    }
+
+    // forget all metrics
+    public void resetMetrics() {
+        queries = settled = relaxed = inserts = changes = delMins = allocatedBytes = 0;
+        maxPQSize = 0;
+        latency.reset();
+    }
+
+    // on by default; off, only the last query's counters are kept
+    public void instrument(boolean on) { instrumented = on; }
+    public boolean isInstrumented()    { return instrumented; }
+
+    // metrics over all queries
+    public long queries()   { return queries;   }
+    public long settled()   { return settled;   }
+    public long relaxed()   { return relaxed;   }
+    public long inserts()   { return inserts;   }
+    public long changes()   { return changes;   }
+    public long delMins()   { return delMins;   }
+    public int  maxPQSize() { return maxPQSize; }
+    public long allocatedBytes() { return allocatedBytes; }
+    public Histogram latency()   { return latency;        }
+
+    // metrics of the last query
+    public int lastSettled()   { return lastSettled;   }
+    public int lastRelaxed()   { return lastRelaxed;   }
+    public int lastInserts()   { return lastInserts;   }
+    public int lastChanges()   { return lastChanges;   }
+    public int lastDelMins()   { return lastDelMins;   }
+    public int lastMaxPQSize() { return lastMaxPQSize; }
+    public long lastNanos()    { return lastNanos;     }    // 0 unless instrumented
+    public long lastAllocatedBytes() { return lastAllocatedBytes; }
+
+    // the kind of queue this context searches with
+    public String queueName() { return queues.name(); }
+
+    // estimate memory usage of the search arrays and queues
+    public long memoryBytes() {
+        long V = dist.length;
+        long bytes = V * (2 * Double.BYTES + 2 * Integer.BYTES) + pq.memoryBytes() + latency.memoryBytes();
+        if (distB != null) bytes += V * (Double.BYTES + 2 * Integer.BYTES) + pqB.memoryBytes();
+        if (isTarget != null) bytes += V * Integer.BYTES;
+        if (settleOrder != null) bytes += V * Integer.BYTES;
+        return bytes;
+    }
+}
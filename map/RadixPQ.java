@@ -0,0 +1,165 @@
+/*************************************************************************
+ *  Compilation:  javac RadixPQ.java
+ *  Dependencies: MinPQ.java
+ *
+ *  Monotone radix heap. Priorities are scaled to longs,
+ *  floor(val * scale), and each key sits in the bucket given by the
+ *  highest bit in which its scaled priority differs from the last
+ *  minimum removed: bucket 0 holds keys equal to it, bucket i keys
+ *  that first differ in bit i-1. delMin() takes from bucket 0; when
+ *  that is empty, the first non-empty bucket is redistributed around
+ *  its own minimum, and every key moves to a strictly lower bucket.
+ *  So each key moves at most 64 times, whatever the priorities.
+ *
+ *  It needs monotone priorities: nothing may be inserted below the
+ *  last minimum. Dijkstra's keys are, and A* keys with a consistent
+ *  heuristic are too, up to floating-point noise; a priority below the
+ *  last minimum is clamped to it. Keys are ordered only to within
+ *  1 / scale, the same tolerance as Dijkstra's EPSILON by default, so
+ *  keys closer than that may come out in either order. The exact
+ *  double priorities are kept for minPriority().
+ *
+ *  Buckets are doubly linked lists threaded through next[] and prev[],
+ *  so change() is O(1): unlink and relink. Membership is stamped with
+ *  a generation counter so clear() touches only the 65 bucket heads.
+ *
+ *************************************************************************/
+
+public class RadixPQ implements MinPQ {
+    public static final double DEFAULT_SCALE = 1e6;
+    private static final int BUCKETS = 65;
+
+    private final double scale;      // priority units per long step
+    private final long[] key;        // key[k] = scaled priority of k
+    private final double[] priority; // priority[k] = exact priority of k
+    private final int[] next, prev;  // bucket lists, -1 terminated
+    private final int[] bucket;      // bucket[k] = bucket holding k
+    private final int[] mark;        // mark[k] == gen iff k is on the PQ
+    private final int[] head = new int[BUCKETS];
+    private int gen = 1;
+    private long last;               // scaled priority of the last minimum
+    private int N;
+
+    // tracking metrics
+    private int insertCount, changeCount, delMinCount, maxPQSize;
+    private long moveCount;          // keys moved by redistribution
+
+    public RadixPQ(int maxN, double scale) {
+        if (!(scale > 0.0)) throw new IllegalArgumentException("Scale must be positive");
+        this.scale = scale;
+        key = new long[maxN];
+        priority = new double[maxN];
+        next = new int[maxN];
+        prev = new int[maxN];
+        bucket = new int[maxN];
+        mark = new int[maxN];
+        clear();
+    }
+
+    // builds radix heaps with the given scale
+    public static MinPQ.Factory factory(final double scale) {
+        return new MinPQ.Factory() {
+            public MinPQ create(int maxN) { return new RadixPQ(maxN, scale); }
+            public String name() { return "radix"; }
+        };
+    }
+
+    public boolean isEmpty() { return N == 0; }
+
+    public void clear() {
+        gen++;
+        for (int i = 0; i < BUCKETS; i++) head[i] = -1;
+        last = Long.MIN_VALUE;
+        N = 0;
+        insertCount = changeCount = delMinCount = maxPQSize = 0;
+        moveCount = 0;
+    }
+
+    public boolean contains(int k) { return mark[k] == gen; }
+
+    public double minPriority() {
+        if (head[0] == -1) redistribute();
+        return priority[head[0]];
+    }
+
+    public void insert(int k, double val) {
+        insertCount++;
+        mark[k] = gen;
+        N++;
+        place(k, val);
+        maxPQSize = Math.max(maxPQSize, N);
+    }
+
+    public int delMin() {
+        delMinCount++;
+        if (head[0] == -1) redistribute();
+        int min = head[0];
+        unlink(min);
+        mark[min] = 0;
+        N--;
+        return min;
+    }
+
+    public void change(int k, double val) {
+        changeCount++;
+        unlink(k);
+        place(k, val);
+    }
+
+    // metrics since construction or the last clear()
+    public int insertCount() { return insertCount; }
+    public int changeCount() { return changeCount; }
+    public int delMinCount() { return delMinCount; }
+    public int maxSize()     { return maxPQSize;   }
+    public long moveCount()  { return moveCount;   }
+
+    public long memoryBytes() {
+        return (long) key.length * (Long.BYTES + Double.BYTES + 4 * Integer.BYTES);
+    }
+
+
+    // set the priority of k and link it into its bucket
+    private void place(int k, double val) {
+        priority[k] = val;
+        long q = (long) Math.floor(val * scale);
+        key[k] = (q < last) ? last : q;   // keep the heap monotone
+        link(k, bucketOf(key[k]));
+    }
+
+    // highest bit in which q differs from last, plus one; 0 if equal
+    private int bucketOf(long q) {
+        return 64 - Long.numberOfLeadingZeros(q ^ last);
+    }
+
+    // move the first non-empty bucket around its minimum; bucket 0 is empty
+    private void redistribute() {
+        int i = 1;
+        while (head[i] == -1) i++;
+        long min = Long.MAX_VALUE;
+        for (int k = head[i]; k != -1; k = next[k])
+            if (key[k] < min) min = key[k];
+        last = min;
+        int k = head[i];
+        head[i] = -1;
+        while (k != -1) {
+            int nextK = next[k];
+            link(k, bucketOf(key[k]));
+            moveCount++;
+            k = nextK;
+        }
+    }
+
+    private void link(int k, int b) {
+        bucket[k] = b;
+        prev[k] = -1;
+        next[k] = head[b];
+        if (head[b] != -1) prev[head[b]] = k;
+        head[b] = k;
+    }
+
+    private void unlink(int k) {
+        if (prev[k] != -1) next[prev[k]] = next[k];
+        else               head[bucket[k]] = next[k];
+        if (next[k] != -1) prev[next[k]] = prev[k];
+    }
+}
@@ -0,0 +1,160 @@
+/*************************************************************************
+ *  Compilation:  javac Renumbering.java
+ *  Execution:    java Renumbering graph-file [hilbert|bfs]
+ *  Dependencies: EuclideanGraph.java GraphFile.java
+ *
+ *  Vertex renumbering for cache locality, with the two-way id mapping
+ *  that keeps external ids stable.
+ *
+ *  usa.txt numbers vertices in input order, so the neighbors of a
+ *  vertex can sit anywhere in dist[], pred[], seen[] and the graph
+ *  arrays. Renumbering so that nearby vertices get nearby ids keeps a
+ *  search's working set on fewer cache lines. Two orders:
+ *
+ *      hilbert   sort the vertices by their position along a Hilbert
+ *                curve through the bounding box (2^15 x 2^15 cells)
+ *      bfs       breadth-first order, each component started from its
+ *                lowest external id
+ *
+ *  graph() is the renumbered copy, whose ids are internal. Translate
+ *  at the edges: internal() on the way in, external() on the way out.
+ *  Distances, Batch and RouteServer do so when given -order, so their
+ *  input and output keep the ids of the graph file.
+ *
+ *  % java Renumbering usa.txt hilbert
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+
+public class Renumbering {
+    private static final int HILBERT_BITS = 15;    // curve index < 2^30, so keys stay positive
+
+    private final int[] toInternal;    // toInternal[external id] = internal id
+    private final int[] toExternal;    // toExternal[internal id] = external id
+    private final EuclideanGraph graph;
+
+    private Renumbering(EuclideanGraph G, int[] toExternal) {
+        this.toExternal = toExternal;
+        this.toInternal = new int[toExternal.length];
+        for (int i = 0; i < toExternal.length; i++)
+            toInternal[toExternal[i]] = i;
+        this.graph = G.renumber(toExternal);
+    }
+
+    // order vertices along a Hilbert curve over their coordinates
+    public static Renumbering hilbert(EuclideanGraph G) {
+        int V = G.V();
+        int loX = Integer.MAX_VALUE, loY = Integer.MAX_VALUE;
+        int hiX = Integer.MIN_VALUE, hiY = Integer.MIN_VALUE;
+        for (int v = 0; v < V; v++) {
+            loX = Math.min(loX, G.x(v)); hiX = Math.max(hiX, G.x(v));
+            loY = Math.min(loY, G.y(v)); hiY = Math.max(hiY, G.y(v));
+        }
+        int side = 1 << HILBERT_BITS;
+        double scale = (side - 1) / (double) Math.max(1, Math.max(hiX - loX, hiY - loY));
+
+        // curve position in the high half, vertex id in the low half
+        long[] keys = new long[V];
+        for (int v = 0; v < V; v++) {
+            int x = (int) ((G.x(v) - loX) * scale);
+            int y = (int) ((G.y(v) - loY) * scale);
+            keys[v] = (hilbertIndex(side, x, y) << 32) | v;
+        }
+        Arrays.parallelSort(keys);
+        int[] order = new int[V];
+        for (int i = 0; i < V; i++)
+            order[i] = (int) keys[i];
+        return new Renumbering(G, order);
+    }
+
+    // breadth-first order, components in order of their lowest id
+    public static Renumbering bfs(EuclideanGraph G) {
+        int V = G.V();
+        int[] order = new int[V];
+        boolean[] marked = new boolean[V];
+        int n = 0;
+        for (int root = 0; root < V; root++) {
+            if (marked[root]) continue;
+            marked[root] = true;
+            order[n++] = root;
+            for (int head = n - 1; head < n; head++) {
+                int v = order[head];
+                for (int e = G.begin(v); e < G.end(v); e++) {
+                    int w = G.target(e);
+                    if (!marked[w]) {
+                        marked[w] = true;
+                        order[n++] = w;
+                    }
+                }
+            }
+        }
+        return new Renumbering(G, order);
+    }
+
+    // by name, as given on the command line
+    public static Renumbering of(String name, EuclideanGraph G) {
+        if (name.equals("hilbert")) return hilbert(G);
+        if (name.equals("bfs"))     return bfs(G);
+        throw new IllegalArgumentException("Unknown vertex order " + name + ", expected hilbert or bfs");
+    }
+
+    // the renumbered graph; its ids are internal
+    public EuclideanGraph graph() { return graph; }
+
+    public int internal(int v) { return toInternal[v]; }
+    public int external(int v) { return toExternal[v]; }
+
+    // translate an array of ids in place; returns it
+    public int[] internal(int[] ids) {
+        for (int i = 0; i < ids.length; i++) ids[i] = toInternal[ids[i]];
+        return ids;
+    }
+
+    public int[] external(int[] ids) {
+        for (int i = 0; i < ids.length; i++) ids[i] = toExternal[ids[i]];
+        return ids;
+    }
+
+    // fraction of edge slots whose endpoints' ids differ by less than
+    // gap, a rough locality score (16 ints share a 64-byte cache line)
+    public static double nearFraction(EuclideanGraph G, int gap) {
+        long near = 0;
+        for (int v = 0; v < G.V(); v++)
+            for (int e = G.begin(v); e < G.end(v); e++)
+                if (Math.abs(G.target(e) - v) < gap) near++;
+        return (G.E() == 0) ? 0.0 : near / (2.0 * G.E());
+    }
+
+    // distance of cell (x, y) along the Hilbert curve filling a side x side square
+    private static long hilbertIndex(int side, int x, int y) {
+        long d = 0;
+        for (int s = side / 2; s > 0; s /= 2) {
+            int rx = ((x & s) > 0) ? 1 : 0;
+            int ry = ((y & s) > 0) ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant so the curve stays continuous
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = side - 1 - x;
+                    y = side - 1 - y;
+                }
+                int t = x; x = y; y = t;
+            }
+        }
+        return d;
+    }
+
+
+    // test client: locality before and after
+    public static void main(String[] args) {
+        EuclideanGraph G = GraphFile.read(args[0]);
+        String name = (args.length > 1) ? args[1] : "hilbert";
+        long start = System.nanoTime();
+        Renumbering r = Renumbering.of(name, G);
+        long end = System.nanoTime();
+        System.err.printf("%s order in %.1f ms; neighbors within 16 ids: %.1f%% before, %.1f%% after%n",
+                          name, (end - start) / 1e6,
+                          100 * nearFraction(G, 16), 100 * nearFraction(r.graph(), 16));
+    }
+}
@@ -0,0 +1,327 @@
+/*************************************************************************
+ *  Compilation:  javac RouteCache.java
+ *  Execution:    java RouteCache graph-file [capacity] [lru|lfu] [-paths] < input.txt
+ *  Dependencies: EuclideanGraph.java GraphFile.java Router.java
+ *                Dijkstra.java QueryContext.java DynamicGraph.java IntScanner.java
+ *
+ *  Bounded, thread-safe cache of query results in front of a Router.
+ *
+ *  The graph is undirected, so (s, d) and (d, s) share one entry,
+ *  keyed by the pair in increasing order packed into a long. An entry
+ *  holds the distance and, if the cache keeps paths, the path as an
+ *  int[] stored from the smaller endpoint and reversed on the way out
+ *  when needed. A path request that finds only a distance counts as a
+ *  miss and upgrades the entry.
+ *
+ *  Eviction is least recently used (one access-ordered list) or least
+ *  frequently used (one list per use count, least recently used first
+ *  within a count), both O(1). The lock covers only the lookup and the
+ *  bookkeeping; searches run outside it, so two threads missing on the
+ *  same pair both search and the second result wins.
+ *
+ *  As a DynamicGraph listener it forgets results that an update may
+ *  have changed. When every change raised or closed an edge, only the
+ *  entries whose path uses one of those edges go: every other path
+ *  kept its length and the rest only grew. Other updates, or a cache
+ *  that keeps no paths, clear everything. A generation count makes a
+ *  search that straddles an update drop its result instead of caching it.
+ *  A miss searches the snapshot the cache last saw, read under the same
+ *  lock as the generation, so the result never depends on whether the
+ *  Router heard of the update first.
+ *
+ *  The test client prints the same output as Distances and reports
+ *  the hit rate on stderr.
+ *
+ *  % java RouteCache usa.txt 10000 lfu < allQueries.txt
+ *
+ *************************************************************************/
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+public class RouteCache implements DynamicGraph.Listener {
+    public enum Policy { LRU, LFU }
+
+    // cached result for the pair lo <= hi; also a list node
+    private static final class Entry {
+        final long key;
+        double distance;
+        int[] path;                 // lo first, or null
+        int uses;                   // LFU count
+        Entry prev, next;
+        Entry(long key) { this.key = key; }
+    }
+
+    // doubly linked list with a sentinel, most recent at the front
+    private static final class EntryList {
+        final Entry head = new Entry(-1);
+        EntryList() { head.prev = head.next = head; }
+        boolean isEmpty() { return head.next == head; }
+        void addFirst(Entry e) {
+            e.next = head.next; e.prev = head;
+            head.next.prev = e; head.next = e;
+        }
+        Entry last() { return head.prev; }
+    }
+
+    private final Router router;
+    private final int capacity;
+    private final Policy policy;
+    private final boolean keepPaths;
+
+    private final Map<Long, Entry> entries = new HashMap<Long, Entry>();
+    private final EntryList recent = new EntryList();                      // LRU
+    private final Map<Integer, EntryList> byUses = new HashMap<Integer, EntryList>();  // LFU
+    private int minUses;
+
+    private long generation;        // bumped by every graph update
+    private EuclideanGraph graph;   // snapshot of that generation
+
+    // metrics
+    private long hits, misses, evictions, invalidations;
+
+    public RouteCache(Router router, int capacity, Policy policy, boolean keepPaths) {
+        if (capacity < 1) throw new IllegalArgumentException("Cache capacity must be positive");
+        this.router = router;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.keepPaths = keepPaths;
+        this.graph = router.graph();
+    }
+
+    public Router router() { return router; }
+
+    // shortest path distance from s to d, searching only on a miss
+    public double distance(int s, int d) {
+        long key = key(s, d);
+        long gen;
+        EuclideanGraph G;
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null) {
+                hits++;
+                touch(e);
+                return e.distance;
+            }
+            misses++;
+            gen = generation;
+            G = graph;
+        }
+        QueryContext ctx = router.acquire();
+        try {
+            Dijkstra dijkstra = router.searcher(ctx, G, d);
+            dijkstra.compute(s, d);
+            double dist = dijkstra.distTo(d);
+            put(key, dist, keepPaths ? lowFirst(dijkstra.path(s, d), s, d) : null, gen);
+            return dist;
+        }
+        finally { router.release(ctx); }
+    }
+
+    // vertices of the shortest path from s to d, s first; empty if
+    // unreachable. Without keepPaths this is an uncached search.
+    public int[] path(int s, int d) {
+        long key = key(s, d);
+        long gen;
+        EuclideanGraph G;
+        synchronized (this) {
+            gen = generation;
+            G = graph;
+            if (keepPaths) {
+                Entry e = entries.get(key);
+                if (e != null && e.path != null) {
+                    hits++;
+                    touch(e);
+                    return lowFirst(e.path.clone(), s, d);
+                }
+                misses++;
+            }
+        }
+        QueryContext ctx = router.acquire();
+        try {
+            Dijkstra dijkstra = router.searcher(ctx, G, d);
+            dijkstra.compute(s, d);
+            int[] path = dijkstra.path(s, d);
+            if (keepPaths) put(key, dijkstra.distTo(d), lowFirst(path.clone(), s, d), gen);
+            return path;
+        }
+        finally { router.release(ctx); }
+    }
+
+    // metrics
+    public synchronized long hits()      { return hits;      }
+    public synchronized long misses()    { return misses;    }
+    public synchronized long evictions() { return evictions; }
+    public synchronized long invalidations() { return invalidations; }
+    public synchronized int size()       { return entries.size(); }
+
+    public synchronized double hitRate() {
+        long n = hits + misses;
+        return (n == 0) ? 0.0 : (double) hits / n;
+    }
+
+    public synchronized void resetMetrics() {
+        hits = misses = evictions = invalidations = 0;
+    }
+
+    // forget every entry
+    public synchronized void clear() {
+        entries.clear();
+        recent.head.prev = recent.head.next = recent.head;
+        byUses.clear();
+        minUses = 0;
+    }
+
+    // forget what the graph update may have changed
+    public synchronized void updated(EuclideanGraph snapshot, int[] edges, boolean raisedOnly) {
+        generation++;
+        graph = snapshot;
+        if (!raisedOnly || !keepPaths) {
+            invalidations += entries.size();
+            clear();
+            return;
+        }
+        Set<Long> changed = new HashSet<Long>();
+        for (int i = 0; i < edges.length; i += 2)
+            changed.add(key(edges[i], edges[i + 1]));
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (!uses(e.path, changed)) continue;
+            unlink(e);
+            if (policy == Policy.LFU) dropIfEmpty(e.uses);
+            it.remove();
+            invalidations++;
+        }
+        if (policy == Policy.LFU && !byUses.containsKey(minUses)) {
+            minUses = Integer.MAX_VALUE;
+            for (int n : byUses.keySet()) minUses = Math.min(minUses, n);
+            if (byUses.isEmpty()) minUses = 0;
+        }
+    }
+
+
+    // unordered pair as a long, smaller vertex in the high half
+    private static long key(int s, int d) {
+        int lo = Math.min(s, d);
+        int hi = Math.max(s, d);
+        return ((long) lo << 32) | (hi & 0xffffffffL);
+    }
+
+    // reverse path in place unless it already starts at min(s, d);
+    // turns a path for (s, d) into the stored form and back
+    private static int[] lowFirst(int[] path, int s, int d) {
+        if (s <= d) return path;
+        for (int i = 0, j = path.length - 1; i < j; i++, j--) {
+            int t = path[i]; path[i] = path[j]; path[j] = t;
+        }
+        return path;
+    }
+
+    // true if path (null: unknown) has an edge among changed
+    private static boolean uses(int[] path, Set<Long> changed) {
+        if (path == null) return true;
+        for (int i = 1; i < path.length; i++)
+            if (changed.contains(key(path[i - 1], path[i]))) return true;
+        return false;
+    }
+
+    // cache a result found in generation gen, unless the graph changed since
+    private synchronized void put(long key, double distance, int[] path, long gen) {
+        if (gen != generation) return;
+        Entry e = entries.get(key);
+        if (e != null) {
+            e.distance = distance;
+            if (path != null) e.path = path;
+            touch(e);
+            return;
+        }
+        if (entries.size() >= capacity) evict();
+        e = new Entry(key);
+        e.distance = distance;
+        e.path = path;
+        entries.put(key, e);
+        if (policy == Policy.LRU) recent.addFirst(e);
+        else {
+            e.uses = 1;
+            uses(1).addFirst(e);
+            minUses = 1;
+        }
+    }
+
+    // record a use of e
+    private void touch(Entry e) {
+        unlink(e);
+        if (policy == Policy.LRU) {
+            recent.addFirst(e);
+            return;
+        }
+        if (e.uses == minUses && byUses.get(e.uses).isEmpty()) minUses++;
+        dropIfEmpty(e.uses);
+        e.uses++;
+        uses(e.uses).addFirst(e);
+    }
+
+    private void evict() {
+        Entry victim;
+        if (policy == Policy.LRU) victim = recent.last();
+        else                      victim = byUses.get(minUses).last();
+        unlink(victim);
+        if (policy == Policy.LFU) dropIfEmpty(victim.uses);
+        entries.remove(victim.key);
+        evictions++;
+    }
+
+    private EntryList uses(int n) {
+        EntryList list = byUses.get(n);
+        if (list == null) {
+            list = new EntryList();
+            byUses.put(n, list);
+        }
+        return list;
+    }
+
+    private void dropIfEmpty(int n) {
+        EntryList list = byUses.get(n);
+        if (list != null && list.isEmpty()) byUses.remove(n);
+    }
+
+    private static void unlink(Entry e) {
+        e.prev.next = e.next;
+        e.next.prev = e.prev;
+        e.prev = e.next = null;
+    }
+
+
+    // test client: Distances through the cache
+    public static void main(String[] args) {
+        EuclideanGraph G = GraphFile.read(args[0]);
+        int capacity = 10000;
+        Policy policy = Policy.LRU;
+        boolean paths = false;
+        for (int i = 1; i < args.length; i++) {
+            if      (args[i].equals("lru"))    policy = Policy.LRU;
+            else if (args[i].equals("lfu"))    policy = Policy.LFU;
+            else if (args[i].equals("-paths")) paths = true;
+            else capacity = Integer.parseInt(args[i]);
+        }
+        RouteCache cache = new RouteCache(new Router(G), capacity, policy, paths);
+        System.err.println("Done reading the graph " + args[0]);
+
+        IntScanner in = new IntScanner(System.in);
+        long start = System.nanoTime();
+        while (!in.isEmpty()) {
+            int s = in.nextInt();
+            int d = in.nextInt();
+            if (paths) cache.path(s, d);
+            System.out.println(cache.distance(s, d));
+        }
+        long end = System.nanoTime();
+        System.err.printf("%s cache of %d: %d hits, %d misses (%.1f%%), %d evictions, %.3f s%n",
+                          policy, capacity, cache.hits(), cache.misses(), 100 * cache.hitRate(),
+                          cache.evictions(), (end - start) / 1e9);
+    }
+}
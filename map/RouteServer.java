@@ -0,0 +1,360 @@
+/*************************************************************************
+ *  Compilation:  javac RouteServer.java
+ *  Execution:    java RouteServer graph-file [port] [max-searches] [-order hilbert|bfs]
+ *  Dependencies: EuclideanGraph.java GraphFile.java Router.java Dijkstra.java
+ *                QueryContext.java Metrics.java Histogram.java Renumbering.java
+ *
+ *  Long-running HTTP/JSON routing service on the JDK's built-in
+ *  HttpServer. The graph is loaded once and shared by every request
+ *  through one Router, whose pooled QueryContexts hold the search state.
+ *
+ *      GET  /distance?s=&d=          {"s":..,"d":..,"distance":..}
+ *      GET  /distance?sx=&sy=&dx=&dy=   same, endpoints snapped to the
+ *                                    nearest vertices
+ *      GET  /path?s=&d=  (or sx..dy) adds "path":[s,..,d]
+ *      POST /batch                   body: s d pairs, as ints separated
+ *                                    by anything (a query file, or a
+ *                                    JSON array); {"distances":[..]}
+ *      GET  /metrics[?format=csv]    search metrics (see Metrics) and
+ *                                    per-endpoint request latencies
+ *      GET  /health
+ *
+ *  Unreachable targets have "distance":null and an empty path.
+ *
+ *  Each request runs on its own virtual thread where the JDK has them
+ *  (21+, looked up by reflection so this still compiles on older JDKs)
+ *  and on a cached thread pool otherwise. Any number of requests can
+ *  wait on I/O, but a semaphore lets at most max-searches of them search
+ *  at once, so the Router's pool, at about 2 MB of arrays per context on
+ *  usa.txt, never grows past that. The server binds to 127.0.0.1 only.
+ *
+ *  With -order the Router searches a renumbered copy of the graph (see
+ *  Renumbering); vertex ids in requests and responses stay those of the
+ *  graph file.
+ *
+ *  % java RouteServer usa.txt 8080
+ *  % curl 'http://127.0.0.1:8080/distance?s=0&d=1000'
+ *
+ *************************************************************************/
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+public class RouteServer {
+    private static final double INFINITY = Double.MAX_VALUE;
+    private static final int MAX_BATCH = 1 << 20;          // ints in a /batch body
+
+    private final Router router;
+    private final Renumbering ids;    // the Router's graph is ids.graph(), or null
+    private final Semaphore searches;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Histogram> latency = new HashMap<String, Histogram>();  // ns per request
+
+    // request rejected with status 400
+    private static class BadRequest extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        BadRequest(String message) { super(message); }
+    }
+
+    public RouteServer(Router router, int port, int maxSearches) throws IOException {
+        this(router, null, port, maxSearches);
+    }
+
+    // serve a Router over ids.graph(), translating vertex ids in and out
+    public RouteServer(Router router, Renumbering ids, int port, int maxSearches) throws IOException {
+        // the server writes headers and body separately; with Nagle on, each
+        // small response waits out the client's delayed ACK (about 40 ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.router = router;
+        this.ids = ids;
+        this.searches = new Semaphore(maxSearches);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.executor = requestExecutor();
+        server.setExecutor(executor);
+
+        handle("/distance", new Endpoint() {
+            public String answer(HttpExchange ex) { return route(query(ex), false); }
+        });
+        handle("/path", new Endpoint() {
+            public String answer(HttpExchange ex) { return route(query(ex), true); }
+        });
+        handle("/batch", new Endpoint() {
+            public String answer(HttpExchange ex) throws IOException { return batch(body(ex)); }
+        });
+        handle("/metrics", new Endpoint() {
+            public String answer(HttpExchange ex) { return metrics("csv".equals(query(ex).get("format"))); }
+        });
+        handle("/health", new Endpoint() {
+            public String answer(HttpExchange ex) { return "{\"status\":\"ok\",\"vertices\":" + router.graph().V() + "}"; }
+        });
+    }
+
+    public void start() { server.start(); }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int port() { return server.getAddress().getPort(); }
+
+    // true if requests run on virtual threads
+    public static boolean virtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        }
+        catch (NoSuchMethodException e) { return false; }
+    }
+
+
+    // one handler; the String it returns is sent as JSON (or CSV) with 200
+    private interface Endpoint {
+        String answer(HttpExchange ex) throws IOException;
+    }
+
+    private void handle(String path, final Endpoint endpoint) {
+        final Histogram h = new Histogram();
+        latency.put(path, h);
+        server.createContext(path, new HttpHandler() {
+            public void handle(HttpExchange ex) throws IOException {
+                long start = System.nanoTime();
+                int status = 200;
+                String body;
+                try { body = endpoint.answer(ex); }
+                catch (BadRequest e) {
+                    status = 400;
+                    body = "{\"error\":\"" + e.getMessage() + "\"}";
+                }
+                catch (RuntimeException e) {
+                    status = 500;
+                    body = "{\"error\":\"" + e.getClass().getSimpleName() + "\"}";
+                }
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                boolean csv = status == 200 && body.startsWith(Metrics.csvHeader());
+                ex.getResponseHeaders().set("Content-Type", csv ? "text/csv" : "application/json");
+                ex.sendResponseHeaders(status, bytes.length);
+                try (OutputStream out = ex.getResponseBody()) { out.write(bytes); }
+                h.record(System.nanoTime() - start);
+            }
+        });
+    }
+
+    // /distance and /path
+    private String route(Map<String, String> q, boolean withPath) {
+        int s, d;
+        if (q.containsKey("s") || q.containsKey("d")) {
+            s = internal(vertex(q, "s"));
+            d = internal(vertex(q, "d"));
+        }
+        else {
+            s = router.nearest(number(q, "sx"), number(q, "sy"));
+            d = router.nearest(number(q, "dx"), number(q, "dy"));
+            if (s < 0 || d < 0) throw new BadRequest("no vertex to snap to");
+        }
+
+        double dist;
+        int[] path = null;
+        acquire();
+        QueryContext ctx = router.acquire();
+        try {
+            Dijkstra dijkstra = router.searcher(ctx, d);
+            dijkstra.compute(s, d);
+            dist = dijkstra.distTo(d);
+            if (withPath) path = dijkstra.path(s, d);
+        }
+        finally {
+            router.release(ctx);
+            searches.release();
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"s\":").append(external(s)).append(",\"d\":").append(external(d)).append(",\"distance\":");
+        distance(json, dist);
+        if (withPath) {
+            json.append(",\"path\":[");
+            for (int i = 0; i < path.length; i++) {
+                if (i > 0) json.append(',');
+                json.append(external(path[i]));
+            }
+            json.append(']');
+        }
+        return json.append('}').toString();
+    }
+
+    // /batch: every pair on one context, in order
+    private String batch(byte[] body) {
+        int[] q = ints(body);
+        if (q.length % 2 != 0) throw new BadRequest("odd number of vertices");
+        int V = router.graph().V();
+        for (int i = 0; i < q.length; i++) {
+            if (q[i] < 0 || q[i] >= V) throw new BadRequest("vertex " + q[i] + " out of range");
+            q[i] = internal(q[i]);
+        }
+
+        StringBuilder json = new StringBuilder("{\"distances\":[");
+        acquire();
+        QueryContext ctx = router.acquire();
+        try {
+            for (int i = 0; i < q.length; i += 2) {
+                if (i > 0) json.append(',');
+                distance(json, router.searcher(ctx, q[i + 1]).distance(q[i], q[i + 1]));
+            }
+        }
+        finally {
+            router.release(ctx);
+            searches.release();
+        }
+        return json.append("]}").toString();
+    }
+
+    // /metrics: the Router's search metrics and request latencies
+    private String metrics(boolean csv) {
+        Metrics m = router.metrics();
+        if (csv) return Metrics.csvHeader() + "\n" + m.toCsv() + "\n";
+        StringBuilder json = new StringBuilder("{\"search\":").append(m.toJson());
+        json.append(",\"virtualThreads\":").append(virtualThreads());
+        json.append(",\"requests\":{");
+        boolean first = true;
+        for (String path : new String[] { "/distance", "/path", "/batch", "/metrics", "/health" }) {
+            Histogram h = latency.get(path);
+            if (!first) json.append(',');
+            first = false;
+            json.append(String.format(Locale.ROOT,
+                "\"%s\":{\"count\":%d,\"meanNanos\":%.1f,\"p50Nanos\":%d,\"p99Nanos\":%d,\"p999Nanos\":%d,\"maxNanos\":%d}",
+                path, h.count(), h.mean(), h.percentile(50), h.percentile(99), h.percentile(99.9), h.max()));
+        }
+        return json.append("}}").toString();
+    }
+
+
+    private void acquire() {
+        try { searches.acquire(); }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void distance(StringBuilder json, double d) {
+        if (d == INFINITY) json.append("null");
+        else json.append(d);
+    }
+
+    // parameters of the query string
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> params = new HashMap<String, String>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) params.put(pair.substring(0, eq), pair.substring(eq + 1));
+        }
+        return params;
+    }
+
+    private int vertex(Map<String, String> q, String name) {
+        String value = q.get(name);
+        if (value == null) throw new BadRequest("missing " + name);
+        int v;
+        try { v = Integer.parseInt(value); }
+        catch (NumberFormatException e) { throw new BadRequest("bad " + name); }
+        if (v < 0 || v >= router.graph().V()) throw new BadRequest(name + " out of range");
+        return v;
+    }
+
+    private int internal(int v) { return (ids == null) ? v : ids.internal(v); }
+    private int external(int v) { return (ids == null) ? v : ids.external(v); }
+
+    private static double number(Map<String, String> q, String name) {
+        String value = q.get(name);
+        if (value == null) throw new BadRequest("missing " + name);
+        double x;
+        try { x = Double.parseDouble(value); }
+        catch (NumberFormatException e) { throw new BadRequest("bad " + name); }
+        if (!Double.isFinite(x)) throw new BadRequest("bad " + name);
+        return x;
+    }
+
+    private static byte[] body(HttpExchange ex) throws IOException {
+        if (!ex.getRequestMethod().equals("POST")) throw new BadRequest("use POST");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[1 << 16];
+        try (InputStream in = ex.getRequestBody()) {
+            for (int n; (n = in.read(buf)) > 0; ) bytes.write(buf, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    // every run of digits in body, in order; anything else separates them
+    private static int[] ints(byte[] body) {
+        int[] a = new int[16];
+        int n = 0;
+        for (int i = 0; i < body.length; ) {
+            if (body[i] == '-') throw new BadRequest("negative vertex");
+            if (body[i] < '0' || body[i] > '9') { i++; continue; }
+            long v = 0;
+            while (i < body.length && body[i] >= '0' && body[i] <= '9') {
+                v = 10 * v + (body[i++] - '0');
+                if (v > Integer.MAX_VALUE) throw new BadRequest("number too large");
+            }
+            if (n == MAX_BATCH) throw new BadRequest("batch too large");
+            if (n == a.length) a = Arrays.copyOf(a, 2 * n);
+            a[n++] = (int) v;
+        }
+        return Arrays.copyOf(a, n);
+    }
+
+    // a virtual thread per request where the JDK has them
+    private static ExecutorService requestExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java RouteServer <graph-file> [port] [max-searches] [-order hilbert|bfs]");
+            System.exit(1);
+        }
+        int port = 8080;
+        int maxSearches = 2 * Runtime.getRuntime().availableProcessors();
+        String order = null;
+        for (int i = 1, n = 0; i < args.length; i++) {
+            if (args[i].equals("-order")) order = args[++i];
+            else if (n++ == 0)            port = Integer.parseInt(args[i]);
+            else                          maxSearches = Integer.parseInt(args[i]);
+        }
+
+        EuclideanGraph G = GraphFile.read(args[0]);   // text or binary
+        Renumbering ids = (order == null) ? null : Renumbering.of(order, G);
+        Router router = new Router((ids == null) ? G : ids.graph());
+        router.index();                               // for coordinate queries
+        RouteServer server = new RouteServer(router, ids, port, maxSearches);
+        server.start();
+        System.err.printf("Serving %s on http://127.0.0.1:%d (%s threads, %d concurrent searches)%n",
+                          args[0], server.port(), virtualThreads() ? "virtual" : "platform", maxSearches);
+    }
+}
@@ -0,0 +1,220 @@
+/*************************************************************************
+ *  Compilation:  javac Router.java
+ *  Execution:    java Router file < input.txt
+ *  Dependencies: EuclideanGraph.java GraphFile.java Dijkstra.java QueryContext.java
+ *                Landmarks.java MinPQ.java SpatialIndex.java Metrics.java
+ *                DynamicGraph.java
+ *                In.java StdIn.java
+ *
+ *  Thread-safe routing facade over one shared, immutable EuclideanGraph.
+ *
+ *  Each query borrows a QueryContext from a pool, runs a Dijkstra on
+ *  it and hands it back, so N threads need N sets of search arrays
+ *  but only one copy of the graph. Contexts are created on demand and
+ *  never freed, so the pool settles at the peak number of concurrent
+ *  queries. The kind of priority queue the contexts use is part of
+ *  the configuration.
+ *
+ *  Each context records its own metrics; metrics() sums them into one
+ *  snapshot, and instrument(false) turns recording off everywhere.
+ *
+ *  The graph is swapped for a new DynamicGraph snapshot on each commit.
+ *  A query reads the graph once, when its Dijkstra is made, and runs
+ *  to the end on that snapshot.
+ *
+ *  Queries can also be given as raw coordinates, which are snapped to
+ *  the nearest vertex through a SpatialIndex. The index is built on the
+ *  first such query; call index() at load time to build it up front.
+ *
+ *  % java Router usa.txt < usa-5000short.txt
+ *
+ *************************************************************************/
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class Router implements DynamicGraph.Listener {
+    private volatile EuclideanGraph G;        // current snapshot
+    private final Landmarks landmarks;   // ALT bounds, or null
+    private final boolean aStar;
+    private final boolean bidirectional;
+    private final MinPQ.Factory queues;
+    private volatile SpatialIndex index;   // built on first use
+    private volatile boolean instrumented = true;
+
+    private final Queue<QueryContext> pool = new ConcurrentLinkedQueue<QueryContext>();
+    private final List<QueryContext> contexts = new CopyOnWriteArrayList<QueryContext>();
+
+    // A* with the Euclidean heuristic, one direction
+    public Router(EuclideanGraph G) {
+        this(G, null, true, false);
+    }
+
+    public Router(EuclideanGraph G, Landmarks landmarks, boolean aStar, boolean bidirectional) {
+        this(G, landmarks, aStar, bidirectional, IndexPQ.factory(4));
+    }
+
+    public Router(EuclideanGraph G, Landmarks landmarks, boolean aStar, boolean bidirectional,
+                  MinPQ.Factory queues) {
+        this.G = G;
+        this.queues = queues;
+        this.landmarks = landmarks;
+        this.aStar = aStar;
+        this.bidirectional = bidirectional;
+    }
+
+    public EuclideanGraph graph() { return G; }
+
+    // route new queries on snapshot, which must have the same vertices
+    public void updated(EuclideanGraph snapshot, int[] edges, boolean raisedOnly) {
+        if (snapshot.V() != G.V()) throw new IllegalArgumentException("Snapshot has a different vertex count");
+        G = snapshot;
+    }
+
+    // return the shortest path distance from s to d
+    public double distance(int s, int d) {
+        QueryContext ctx = acquire();
+        try {
+            Dijkstra dijkstra = searcher(ctx, d);
+            return dijkstra.distance(s, d);
+        }
+        finally { release(ctx); }
+    }
+
+    // the vertices of the shortest path from s to d, s first;
+    // empty if d is unreachable
+    public int[] path(int s, int d) {
+        QueryContext ctx = acquire();
+        try {
+            Dijkstra dijkstra = searcher(ctx, d);
+            dijkstra.compute(s, d);
+            return dijkstra.path(s, d);
+        }
+        finally { release(ctx); }
+    }
+
+    // the grid used to snap coordinates to vertices
+    public SpatialIndex index() {
+        SpatialIndex idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                if (index == null) index = new SpatialIndex(G);
+                idx = index;
+            }
+        }
+        return idx;
+    }
+
+    // vertex closest to (x, y)
+    public int nearest(double x, double y) {
+        return index().nearest(x, y);
+    }
+
+    // shortest path distance between the vertices nearest two points
+    public double distance(double sx, double sy, double dx, double dy) {
+        return distance(nearest(sx, sy), nearest(dx, dy));
+    }
+
+    // shortest path between the vertices nearest two points, source first
+    public int[] path(double sx, double sy, double dx, double dy) {
+        return path(nearest(sx, sy), nearest(dx, dy));
+    }
+
+    // distances from s to each of targets, from a single search;
+    // INFINITY (Double.MAX_VALUE) where unreachable
+    public double[] distances(int s, int[] targets) {
+        double[] row = new double[targets.length];
+        QueryContext ctx = acquire();
+        try { new Dijkstra(G, ctx).distances(s, targets, row, 0); }
+        finally { release(ctx); }
+        return row;
+    }
+
+    // borrow a context for a batch of queries; hand it back with release()
+    public QueryContext acquire() {
+        QueryContext ctx = pool.poll();
+        if (ctx == null) {
+            ctx = new QueryContext(G.V(), queues);
+            ctx.instrument(instrumented);
+            contexts.add(ctx);
+        }
+        return ctx;
+    }
+
+    public void release(QueryContext ctx) {
+        pool.offer(ctx);
+    }
+
+    // a Dijkstra over ctx configured like this router, ready to search toward d
+    public Dijkstra searcher(QueryContext ctx, int d) {
+        return searcher(ctx, G, d);
+    }
+
+    // the same, on snapshot G rather than the current one
+    public Dijkstra searcher(QueryContext ctx, EuclideanGraph G, int d) {
+        Dijkstra dijkstra = new Dijkstra(G, ctx);
+        dijkstra.useLandmarks(landmarks);
+        if (bidirectional) dijkstra.enableBidirectional(true);
+        if (aStar) dijkstra.enableAStar(d);
+        return dijkstra;
+    }
+
+
+    // metrics of every context this router has created
+    public List<QueryContext> contexts() { return contexts; }
+
+    public int contextCount() { return contexts.size(); }
+
+    public long queries() {
+        long n = 0;
+        for (QueryContext ctx : contexts) n += ctx.queries();
+        return n;
+    }
+
+    public long settled() {
+        long n = 0;
+        for (QueryContext ctx : contexts) n += ctx.settled();
+        return n;
+    }
+
+    public long pqOperations() {
+        long n = 0;
+        for (QueryContext ctx : contexts)
+            n += ctx.inserts() + ctx.changes() + ctx.delMins();
+        return n;
+    }
+
+    public void resetMetrics() {
+        for (QueryContext ctx : contexts) ctx.resetMetrics();
+    }
+
+    // snapshot of the metrics of every context, summed
+    public Metrics metrics() {
+        return Metrics.of(contexts);
+    }
+
+    // turn metric recording on or off for every context, now and later
+    public void instrument(boolean on) {
+        instrumented = on;
+        for (QueryContext ctx : contexts) ctx.instrument(on);
+    }
+
+
+    // test client: same input and output as Distances
+    public static void main(String[] args) {
+        EuclideanGraph G = GraphFile.read(args[0]);   // text or binary
+        Router router = new Router(G);
+        System.err.println("Done reading the graph " + args[0]);
+        System.err.println("Enter query pairs from stdin");
+
+        while (!StdIn.isEmpty()) {
+            int s = StdIn.readInt();
+            int d = StdIn.readInt();
+            System.out.println(router.distance(s, d));
+        }
+        System.err.println(router.queries() + " queries, "
+                           + router.settled() + " vertices settled");
+    }
+}
@@ -0,0 +1,244 @@
+/*************************************************************************
+ *  Compilation:  javac SpatialIndex.java
+ *  Execution:    java SpatialIndex graph-file [queries]
+ *  Dependencies: EuclideanGraph.java GraphFile.java
+ *
+ *  Uniform grid over the vertices of an EuclideanGraph, for snapping
+ *  raw coordinates to the nearest vertex.
+ *
+ *  The bounding box is cut into about V / 2 square-ish cells. Vertices
+ *  are bucketed by cell in compressed-sparse-row form, with their
+ *  coordinates copied alongside in the same order, so scanning a cell
+ *  reads consecutive memory.
+ *
+ *  A nearest-vertex query scans rings of cells around the query point,
+ *  innermost first, and stops once the best distance found is no more
+ *  than the distance to the edge of the block scanned so far, since
+ *  every unscanned vertex lies beyond it. k-nearest does the same with
+ *  the k-th best distance, keeping the candidates in a small max-heap.
+ *
+ *  The test client times random queries against a linear scan.
+ *
+ *  % java SpatialIndex usa.txt 100000
+ *
+ *************************************************************************/
+
+import java.util.Random;
+
+public class SpatialIndex {
+    private static volatile int sink;     // keeps the timed loops alive
+
+    private final int V;
+    private final double minX, minY;      // grid origin
+    private final double cell;            // cell side length
+    private final int cols, rows;
+    private final int[] cellStart;        // vertices of cell c: cellStart[c] .. cellStart[c+1]-1
+    private final int[] ids;              // vertex ids in cell order
+    private final int[] xs, ys;           // their coordinates, same order
+
+    public SpatialIndex(EuclideanGraph G) {
+        V = G.V();
+        int loX = Integer.MAX_VALUE, loY = Integer.MAX_VALUE;
+        int hiX = Integer.MIN_VALUE, hiY = Integer.MIN_VALUE;
+        for (int v = 0; v < V; v++) {
+            loX = Math.min(loX, G.x(v)); hiX = Math.max(hiX, G.x(v));
+            loY = Math.min(loY, G.y(v)); hiY = Math.max(hiY, G.y(v));
+        }
+        if (V == 0) { loX = loY = hiX = hiY = 0; }
+        minX = loX;
+        minY = loY;
+        double w = Math.max(1, hiX - loX);
+        double h = Math.max(1, hiY - loY);
+        int target = Math.max(1, V / 2);        // about two vertices per cell
+        cell = Math.max(1e-9, Math.sqrt(w * h / target));
+        cols = (int) (w / cell) + 1;
+        rows = (int) (h / cell) + 1;
+
+        // counting sort of the vertices by cell
+        cellStart = new int[cols * rows + 1];
+        int[] cellOf = new int[V];
+        for (int v = 0; v < V; v++) {
+            cellOf[v] = cellIndex(G.x(v), G.y(v));
+            cellStart[cellOf[v] + 1]++;
+        }
+        for (int c = 0; c < cols * rows; c++)
+            cellStart[c + 1] += cellStart[c];
+        int[] next = new int[cols * rows];
+        System.arraycopy(cellStart, 0, next, 0, cols * rows);
+        ids = new int[V];
+        xs = new int[V];
+        ys = new int[V];
+        for (int v = 0; v < V; v++) {
+            int i = next[cellOf[v]]++;
+            ids[i] = v;
+            xs[i] = G.x(v);
+            ys[i] = G.y(v);
+        }
+    }
+
+    // vertex closest to (x, y); -1 for an empty graph
+    public int nearest(double x, double y) {
+        checkFinite(x, y);
+        if (V == 0) return -1;
+        int cx = col(x), cy = row(y);
+        int best = -1;
+        double bestD2 = Double.POSITIVE_INFINITY;
+        for (int r = 0; ; r++) {
+            for (int gy = cy - r; gy <= cy + r; gy++) {
+                if (gy < 0 || gy >= rows) continue;
+                // whole rows at the top and bottom of the ring, only the ends in between
+                int step = (gy == cy - r || gy == cy + r) ? 1 : Math.max(1, 2 * r);
+                for (int gx = cx - r; gx <= cx + r; gx += step) {
+                    if (gx < 0 || gx >= cols) continue;
+                    int c = gy * cols + gx;
+                    for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                        double dx = xs[i] - x, dy = ys[i] - y;
+                        double d2 = dx * dx + dy * dy;
+                        // far enough away every d2 overflows to infinity; keep the first
+                        if (best < 0 || d2 < bestD2) { bestD2 = d2; best = ids[i]; }
+                    }
+                }
+            }
+            if (best >= 0 && done(x, y, cx, cy, r, bestD2)) return best;
+        }
+    }
+
+    // the k vertices closest to (x, y), nearest first
+    public int[] nearest(double x, double y, int k) {
+        checkFinite(x, y);
+        k = Math.min(k, V);
+        if (k <= 0) return new int[0];
+        int[] heap = new int[k];              // max-heap of candidates by distance
+        double[] heapD2 = new double[k];
+        int n = 0;
+        int cx = col(x), cy = row(y);
+        for (int r = 0; ; r++) {
+            for (int gy = cy - r; gy <= cy + r; gy++) {
+                if (gy < 0 || gy >= rows) continue;
+                int step = (gy == cy - r || gy == cy + r) ? 1 : Math.max(1, 2 * r);
+                for (int gx = cx - r; gx <= cx + r; gx += step) {
+                    if (gx < 0 || gx >= cols) continue;
+                    int c = gy * cols + gx;
+                    for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                        double dx = xs[i] - x, dy = ys[i] - y;
+                        double d2 = dx * dx + dy * dy;
+                        if (n < k) { n++; siftUp(heap, heapD2, n - 1, ids[i], d2); }
+                        else if (d2 < heapD2[0]) siftDown(heap, heapD2, n, ids[i], d2);
+                    }
+                }
+            }
+            if (n == k && done(x, y, cx, cy, r, heapD2[0])) break;
+        }
+
+        // pop the max-heap from the back to list the nearest first
+        int[] result = new int[k];
+        for (int m = k; m > 0; m--) {
+            result[m - 1] = heap[0];
+            int lastId = heap[m - 1];
+            double lastD2 = heapD2[m - 1];
+            if (m > 1) siftDown(heap, heapD2, m - 1, lastId, lastD2);
+        }
+        return result;
+    }
+
+
+    // true once every vertex outside rings 0..r is at least sqrt(d2) away;
+    // only sides of the block with grid cells beyond them count
+    private boolean done(double x, double y, int cx, int cy, int r, double d2) {
+        double edge = Double.POSITIVE_INFINITY;
+        if (cx - r > 0)        edge = Math.min(edge, x - (minX + (cx - r) * cell));
+        if (cx + r < cols - 1) edge = Math.min(edge, (minX + (cx + r + 1) * cell) - x);
+        if (cy - r > 0)        edge = Math.min(edge, y - (minY + (cy - r) * cell));
+        if (cy + r < rows - 1) edge = Math.min(edge, (minY + (cy + r + 1) * cell) - y);
+        return edge == Double.POSITIVE_INFINITY || (edge > 0 && edge * edge >= d2);
+    }
+
+    private static void checkFinite(double x, double y) {
+        if (!Double.isFinite(x) || !Double.isFinite(y))
+            throw new IllegalArgumentException("Query point must be finite: " + x + " " + y);
+    }
+
+    private int col(double x) { return clamp((int) Math.floor((x - minX) / cell), cols); }
+    private int row(double y) { return clamp((int) Math.floor((y - minY) / cell), rows); }
+    private int cellIndex(int x, int y) { return row(y) * cols + col(x); }
+
+    private static int clamp(int i, int n) { return (i < 0) ? 0 : (i >= n) ? n - 1 : i; }
+
+    // max-heap helpers: place (id, d2) at slot i and restore order
+    private static void siftUp(int[] heap, double[] d, int i, int id, double d2) {
+        while (i > 0 && d[(i - 1) / 2] < d2) {
+            heap[i] = heap[(i - 1) / 2];
+            d[i] = d[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = id;
+        d[i] = d2;
+    }
+
+    // replace the root of a heap of size n with (id, d2)
+    private static void siftDown(int[] heap, double[] d, int n, int id, double d2) {
+        int i = 0;
+        while (2 * i + 1 < n) {
+            int c = 2 * i + 1;
+            if (c + 1 < n && d[c + 1] > d[c]) c++;
+            if (d[c] <= d2) break;
+            heap[i] = heap[c];
+            d[i] = d[c];
+            i = c;
+        }
+        heap[i] = id;
+        d[i] = d2;
+    }
+
+
+    // test client: random queries against a linear scan
+    public static void main(String[] args) {
+        EuclideanGraph G = GraphFile.read(args[0]);
+        int queries = (args.length > 1) ? Integer.parseInt(args[1]) : 100000;
+
+        long start = System.nanoTime();
+        SpatialIndex index = new SpatialIndex(G);
+        long built = System.nanoTime() - start;
+        System.err.printf("Grid of %d x %d cells built in %.1f ms%n",
+                          index.cols, index.rows, built / 1e6);
+
+        Random random = new Random(20240601L);
+        double[] qx = new double[queries];
+        double[] qy = new double[queries];
+        for (int i = 0; i < queries; i++) {
+            int v = random.nextInt(G.V());
+            qx[i] = G.x(v) + 200 * random.nextGaussian();
+            qy[i] = G.y(v) + 200 * random.nextGaussian();
+        }
+
+        for (int round = 0; round < 3; round++) {
+            int sum = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) sum += index.nearest(qx[i], qy[i]);
+            long grid = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) sum += index.nearest(qx[i], qy[i], 10)[9];
+            long knn = System.nanoTime() - start;
+            sink = sum;
+            System.err.printf("nearest %.2f us, 10-nearest %.2f us per query%n",
+                              grid / 1e3 / queries, knn / 1e3 / queries);
+        }
+
+        // check a sample against a linear scan
+        int checks = Math.min(queries, 2000);
+        for (int i = 0; i < checks; i++) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int v = 0; v < G.V(); v++) {
+                double dx = G.x(v) - qx[i], dy = G.y(v) - qy[i];
+                best = Math.min(best, dx * dx + dy * dy);
+            }
+            int u = index.nearest(qx[i], qy[i]);
+            double dx = G.x(u) - qx[i], dy = G.y(u) - qy[i];
+            if (dx * dx + dy * dy != best) throw new RuntimeException("Wrong nearest vertex for query " + i);
+            int[] near = index.nearest(qx[i], qy[i], 10);
+            double ex = G.x(near[0]) - qx[i], ey = G.y(near[0]) - qy[i];
+            if (ex * ex + ey * ey != best) throw new RuntimeException("Wrong k-nearest for query " + i);
+        }
+        System.err.println(checks + " queries agree with a linear scan");
+    }
+}
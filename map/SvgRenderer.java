@@ -0,0 +1,88 @@
+/*************************************************************************
+ *  Compilation:  javac SvgRenderer.java
+ *  Dependencies: PathRenderer.java EuclideanGraph.java
+ *
+ *  Collects shortest paths and writes them, over the graph, to one SVG
+ *  file when closed. The picture matches the Turtle window: the same
+ *  scale as Point.draw(), y pointing up, the graph in gray and the
+ *  paths in red. Nothing here touches AWT, so it works headless, and
+ *  the only cost while queries run is adding an array to a list.
+ *
+ *************************************************************************/
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SvgRenderer implements PathRenderer {
+    private final static double SCALEX = 0.0001 * 1000.0;        // as in Point
+    private final static double SCALEY = 0.0001 * 1000.0 * 1.3;
+
+    private final EuclideanGraph G;
+    private final String file;
+    private final int width, height;
+    private final List<int[]> paths = new ArrayList<int[]>();
+
+    public SvgRenderer(EuclideanGraph G, String file, int width, int height) {
+        this.G = G;
+        this.file = file;
+        this.width = width;
+        this.height = height;
+    }
+
+    public synchronized void add(int[] path) {
+        if (path.length > 1) paths.add(path);
+    }
+
+    public synchronized void close() {
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            out.println("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height + "\">");
+            out.println("<rect width=\"" + width + "\" height=\"" + height + "\" fill=\"white\"/>");
+
+            // every edge once, from its lower endpoint
+            out.print("<path fill=\"none\" stroke=\"black\" stroke-opacity=\"0.4\" stroke-width=\"0.5\" d=\"");
+            for (int v = 0; v < G.V(); v++)
+                for (int e = G.begin(v); e < G.end(v); e++)
+                    if (v < G.target(e)) { move(out, v); line(out, G.target(e)); }
+            out.println("\"/>");
+
+            out.print("<path fill=\"none\" stroke=\"red\" stroke-width=\"1.5\" d=\"");
+            for (int[] path : paths) {
+                move(out, path[0]);
+                for (int i = 1; i < path.length; i++) line(out, path[i]);
+            }
+            out.println("\"/>");
+            out.println("</svg>");
+            if (out.checkError()) throw new IOException("write failed");
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not write " + file, e);
+        }
+    }
+
+    public synchronized int size() { return paths.size(); }
+
+
+    private void move(PrintWriter out, int v) { point(out, 'M', v); }
+    private void line(PrintWriter out, int v) { point(out, 'L', v); }
+
+    // command and the pixel coordinates of v, one decimal each; by hand,
+    // since printf would dominate writing a few hundred thousand edges
+    private void point(PrintWriter out, char command, int v) {
+        out.print(command);
+        decimal(out, G.x(v) * SCALEX);
+        out.print(' ');
+        decimal(out, height - G.y(v) * SCALEY);
+    }
+
+    private static void decimal(PrintWriter out, double d) {
+        long tenths = Math.round(d * 10);
+        if (tenths < 0) { out.print('-'); tenths = -tenths; }
+        out.print(tenths / 10);
+        out.print('.');
+        out.print((char) ('0' + tenths % 10));
+    }
+}
@@ -0,0 +1,249 @@
+/*************************************************************************
+ *  Compilation:  javac TreeCache.java
+ *  Execution:    java TreeCache graph-file [budget-MB] [hot-after] < input.txt
+ *  Dependencies: EuclideanGraph.java GraphFile.java Router.java
+ *                Dijkstra.java QueryContext.java DynamicGraph.java IntScanner.java
+ *
+ *  Cache of shortest path trees for hot source vertices.
+ *
+ *  Once a source has been asked for hotAfter times, its next miss runs
+ *  a plain Dijkstra (Dijkstra.settle) instead of A* and keeps every
+ *  vertex it settled: a ball around the source whose distances and
+ *  predecessors are final. warm(s) grows a full tree up front. A tree
+ *  is three arrays sorted by vertex id (ids, dist, and pred as an index
+ *  into the same arrays), 16 bytes per vertex, so a lookup is a binary
+ *  search and a path is read back in O(path length).
+ *
+ *  A query from s to d is answered from the tree of s if it covers d,
+ *  or, since the graph is undirected, from the tree of d if it covers s.
+ *  A miss from a hot source replaces its tree with a larger one; other
+ *  misses go to the Router. Trees are evicted least recently used once
+ *  their total size passes the byte budget.
+ *
+ *  On a DynamicGraph update that only raised or closed edges, a tree
+ *  survives unless one of those edges is a tree edge: its paths kept
+ *  their lengths and every other path only grew. Any other update drops
+ *  every tree. A tree whose build straddles an update is not kept, and
+ *  a build searches the snapshot read with the generation, so it does
+ *  not matter which listener DynamicGraph calls first.
+ *
+ *  % java TreeCache usa.txt 64 2 < usa-5000short.txt
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TreeCache implements DynamicGraph.Listener {
+    private static final double INFINITY = Double.MAX_VALUE;
+    private static final int MAX_COUNTED = 1 << 16;  // sources with a use count
+
+    // settled part of the shortest path tree from one source
+    private static final class Tree {
+        final int[] ids;          // settled vertices, increasing
+        final double[] dist;      // dist[i] = distance to ids[i]
+        final int[] pred;         // pred[i] = index of the predecessor, -1 at the source
+        final boolean full;       // every reachable vertex is in the tree
+
+        Tree(int[] ids, double[] dist, int[] pred, boolean full) {
+            this.ids = ids; this.dist = dist; this.pred = pred; this.full = full;
+        }
+
+        int indexOf(int v)  { return Arrays.binarySearch(ids, v); }
+        long bytes()        { return (long) ids.length * (2 * Integer.BYTES + Double.BYTES); }
+    }
+
+    private final Router router;
+    private final long budget;               // bytes
+    private final int hotAfter;
+
+    private final LinkedHashMap<Integer, Tree> trees = new LinkedHashMap<Integer, Tree>(16, 0.75f, true);
+    private final Map<Integer, Integer> uses = new HashMap<Integer, Integer>();
+    private long bytes;
+    private long generation;                 // bumped by every graph update
+    private EuclideanGraph graph;            // snapshot of that generation
+
+    // metrics
+    private long hits, misses, builds, evictions, invalidations;
+
+    public TreeCache(Router router, long budgetBytes, int hotAfter) {
+        if (budgetBytes < 1) throw new IllegalArgumentException("Budget must be positive");
+        if (hotAfter < 1) throw new IllegalArgumentException("hotAfter must be positive");
+        this.router = router;
+        this.budget = budgetBytes;
+        this.hotAfter = hotAfter;
+        this.graph = router.graph();
+    }
+
+    // shortest path distance from s to d
+    public double distance(int s, int d) {
+        synchronized (this) {
+            Tree t = trees.get(s);
+            int i = (t == null) ? -1 : t.indexOf(d);
+            if (i >= 0) { hits++; return t.dist[i]; }
+            if (t != null && t.full) { hits++; return INFINITY; }
+            Tree u = trees.get(d);
+            int j = (u == null) ? -1 : u.indexOf(s);
+            if (j >= 0) { hits++; return u.dist[j]; }
+            misses++;
+        }
+        if (isHot(s)) {
+            Tree t = build(s, d);
+            int i = t.indexOf(d);
+            return (i >= 0) ? t.dist[i] : INFINITY;
+        }
+        return router.distance(s, d);
+    }
+
+    // vertices of the shortest path from s to d, s first; empty if unreachable
+    public int[] path(int s, int d) {
+        Tree t;
+        synchronized (this) {
+            t = trees.get(s);
+            int i = (t == null) ? -1 : t.indexOf(d);
+            if (i >= 0) { hits++; return walk(t, i, true); }
+            if (t != null && t.full) { hits++; return new int[0]; }
+            Tree u = trees.get(d);
+            int j = (u == null) ? -1 : u.indexOf(s);
+            if (j >= 0) { hits++; return walk(u, j, false); }
+            misses++;
+        }
+        if (isHot(s)) {
+            t = build(s, d);
+            int i = t.indexOf(d);
+            return (i >= 0) ? walk(t, i, true) : new int[0];
+        }
+        return router.path(s, d);
+    }
+
+    // grow and keep the full shortest path tree from s
+    public void warm(int s) {
+        build(s, -1);
+    }
+
+    // metrics
+    public synchronized long hits()      { return hits;      }
+    public synchronized long misses()    { return misses;    }
+    public synchronized long builds()    { return builds;    }
+    public synchronized long evictions() { return evictions; }
+    public synchronized long invalidations() { return invalidations; }
+    public synchronized long bytes()     { return bytes;     }
+    public synchronized int size()       { return trees.size(); }
+
+
+    // drop the trees the graph update may have changed
+    public synchronized void updated(EuclideanGraph snapshot, int[] edges, boolean raisedOnly) {
+        generation++;
+        graph = snapshot;
+        Iterator<Tree> it = trees.values().iterator();
+        while (it.hasNext()) {
+            Tree t = it.next();
+            if (raisedOnly && !usesAny(t, edges)) continue;
+            bytes -= t.bytes();
+            it.remove();
+            invalidations++;
+        }
+    }
+
+    // true if some edge v-w of edges is a tree edge of t
+    private static boolean usesAny(Tree t, int[] edges) {
+        for (int k = 0; k < edges.length; k += 2) {
+            int i = t.indexOf(edges[k]);
+            int j = t.indexOf(edges[k + 1]);
+            if (i >= 0 && j >= 0 && (t.pred[i] == j || t.pred[j] == i)) return true;
+        }
+        return false;
+    }
+
+    // count a use of s as a source; true once it is hot
+    private synchronized boolean isHot(int s) {
+        if (uses.size() >= MAX_COUNTED) uses.clear();
+        Integer n = uses.get(s);
+        int count = (n == null) ? 1 : n + 1;
+        uses.put(s, count);
+        return count >= hotAfter;
+    }
+
+    // path from the root of t to ids[i], reversed if !rootFirst
+    private static int[] walk(Tree t, int i, boolean rootFirst) {
+        int n = 1;
+        for (int k = i; t.pred[k] != -1; k = t.pred[k]) n++;
+        int[] path = new int[n];
+        int pos = rootFirst ? n - 1 : 0;
+        int step = rootFirst ? -1 : 1;
+        for (int k = i; k != -1; k = t.pred[k], pos += step)
+            path[pos] = t.ids[k];
+        return path;
+    }
+
+    // search from s until d is settled (d = -1: everything) and keep the tree
+    private Tree build(int s, int d) {
+        long gen;
+        EuclideanGraph G;
+        synchronized (this) { gen = generation; G = graph; }
+        QueryContext ctx = router.acquire();
+        Tree tree;
+        try {
+            Dijkstra dijkstra = new Dijkstra(G, ctx);
+            int[] order = ctx.ensureSettleOrder();
+            int n = dijkstra.settle(s, d, order);
+
+            // the settled vertices by id, with their final distances
+            int[] ids = Arrays.copyOf(order, n);
+            Arrays.sort(ids);
+            double[] dist = new double[n];
+            for (int k = 0; k < n; k++)
+                dist[k] = dijkstra.distTo(ids[k]);
+            int[] pred = new int[n];
+            for (int k = 0; k < n; k++) {
+                int p = dijkstra.predTo(ids[k]);
+                pred[k] = (ids[k] == s) ? -1 : Arrays.binarySearch(ids, p);
+            }
+            tree = new Tree(ids, dist, pred, d == -1 || dijkstra.distTo(d) == INFINITY);
+        }
+        finally { router.release(ctx); }
+
+        synchronized (this) {
+            if (gen != generation) return tree;      // built on an older graph
+            Tree old = trees.put(s, tree);
+            if (old != null) bytes -= old.bytes();
+            bytes += tree.bytes();
+            builds++;
+            // evict least recently used trees, never the one just built
+            Iterator<Map.Entry<Integer, Tree>> it = trees.entrySet().iterator();
+            while (bytes > budget && it.hasNext()) {
+                Map.Entry<Integer, Tree> e = it.next();
+                if (e.getValue() == tree) continue;
+                bytes -= e.getValue().bytes();
+                it.remove();
+                evictions++;
+            }
+        }
+        return tree;
+    }
+
+
+    // test client: Distances through the tree cache
+    public static void main(String[] args) {
+        EuclideanGraph G = GraphFile.read(args[0]);
+        long budget = ((args.length > 1) ? Long.parseLong(args[1]) : 64) << 20;
+        int hotAfter = (args.length > 2) ? Integer.parseInt(args[2]) : 2;
+        TreeCache cache = new TreeCache(new Router(G), budget, hotAfter);
+        System.err.println("Done reading the graph " + args[0]);
+
+        IntScanner in = new IntScanner(System.in);
+        long start = System.nanoTime();
+        while (!in.isEmpty()) {
+            int s = in.nextInt();
+            int d = in.nextInt();
+            System.out.println(cache.distance(s, d));
+        }
+        long end = System.nanoTime();
+        System.err.printf("%d hits, %d misses, %d trees built, %d evicted, %d trees in %d KB, %.3f s%n",
+                          cache.hits(), cache.misses(), cache.builds(), cache.evictions(),
+                          cache.size(), cache.bytes() >> 10, (end - start) / 1e9);
+    }
+}
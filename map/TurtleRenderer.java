@@ -0,0 +1,72 @@
+/*************************************************************************
+ *  Compilation:  javac TurtleRenderer.java
+ *  Dependencies: PathRenderer.java EuclideanGraph.java Point.java Turtle.java
+ *
+ *  Draws shortest paths in a Turtle window from a render thread of its
+ *  own. The thread opens the window and draws the graph, then takes
+ *  paths off an unbounded queue, draws whatever has piled up since the
+ *  last time and repaints once per batch. add() only enqueues, so the
+ *  thread answering queries never waits on AWT, and it can finish long
+ *  before the picture does. Turtle is only ever called from the render
+ *  thread.
+ *
+ *************************************************************************/
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+public class TurtleRenderer implements PathRenderer {
+    private static final int[] END = new int[0];    // marks the end of the queue
+
+    private final EuclideanGraph G;
+    private final BlockingQueue<int[]> queue = new LinkedBlockingQueue<int[]>();
+    private final Thread thread;
+
+    public TurtleRenderer(EuclideanGraph G, final int width, final int height) {
+        this.G = G;
+        thread = new Thread(new Runnable() {
+            public void run() { draw(width, height); }
+        }, "turtle-renderer");
+        thread.start();
+    }
+
+    public void add(int[] path) {
+        if (path.length > 1) queue.add(path);
+    }
+
+    public void close() {
+        queue.add(END);
+        try { thread.join(); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+
+
+    // body of the render thread
+    private void draw(int width, int height) {
+        Turtle.create(width, height);
+        G.draw();
+        Turtle.setColor(Color.red);
+        List<int[]> batch = new ArrayList<int[]>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                boolean done = false;
+                for (int[] path : batch) {
+                    if (path == END) { done = true; break; }
+                    for (int i = 1; i < path.length; i++)
+                        G.point(path[i]).drawTo(G.point(path[i - 1]));
+                }
+                Turtle.render();
+                if (done) return;
+                batch.clear();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}